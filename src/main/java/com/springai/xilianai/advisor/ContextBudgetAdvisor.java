@@ -0,0 +1,180 @@
+package com.springai.xilianai.advisor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 提示词预算 Advisor
+ * 在检索增强之后、调用模型之前统计提示词各部分（人设、对话记忆、检索内容、本轮问题）的 token 数并记录指标；
+ * 总数超出预算时从最早的对话记忆开始裁剪，人设和本轮问题（含检索内容）保持不变，使提示词前缀稳定。
+ */
+@Slf4j
+@Component
+public class ContextBudgetAdvisor implements CallAdvisor, StreamAdvisor {
+
+	/**
+	 * 检索增强 Advisor 的默认顺序是 0，预算检查要看到检索内容
+	 */
+	private static final int ORDER = 100;
+
+	private final PromptBudgetProperties properties;
+	private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+	private final DistributionSummary systemTokens;
+	private final DistributionSummary historyTokens;
+	private final DistributionSummary contextTokens;
+	private final DistributionSummary totalTokens;
+	private final Counter trimmedMessages;
+	private final Counter overBudget;
+
+	public ContextBudgetAdvisor(PromptBudgetProperties properties, MeterRegistry meterRegistry) {
+		this.properties = properties;
+		this.systemTokens = tokens(meterRegistry, "system");
+		this.historyTokens = tokens(meterRegistry, "history");
+		this.contextTokens = tokens(meterRegistry, "context");
+		this.totalTokens = tokens(meterRegistry, "total");
+		this.trimmedMessages = meterRegistry.counter("xilian.prompt.trimmed.messages");
+		this.overBudget = meterRegistry.counter("xilian.prompt.over.budget");
+	}
+
+	@Override
+	public String getName() {
+		return this.getClass().getSimpleName();
+	}
+
+	@Override
+	public int getOrder() {
+		return ORDER;
+	}
+
+	@Override
+	public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain chain) {
+		return chain.nextCall(before(chatClientRequest));
+	}
+
+	@Override
+	public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain chain) {
+		return chain.nextStream(before(chatClientRequest));
+	}
+
+	private ChatClientRequest before(ChatClientRequest request) {
+		List<Message> messages = request.prompt().getInstructions();
+		int current = lastUserMessage(messages);
+
+		// 人设（及记忆摘要）等系统消息、历史消息、本轮问题分别计数
+		List<Message> system = new ArrayList<>();
+		List<Message> history = new ArrayList<>();
+		List<Integer> historyCounts = new ArrayList<>();
+		int systemCount = 0;
+		int historyCount = 0;
+		for (int i = 0; i < messages.size(); i++) {
+			Message message = messages.get(i);
+			if (i == current) {
+				continue;
+			}
+			int count = count(message);
+			if (message.getMessageType() == MessageType.SYSTEM) {
+				system.add(message);
+				systemCount += count;
+			} else {
+				history.add(message);
+				historyCounts.add(count);
+				historyCount += count;
+			}
+		}
+		int currentCount = current >= 0 ? count(messages.get(current)) : 0;
+		int contextCount = retrievedContextTokens(request);
+
+		int trimmed = 0;
+		if (properties.isEnabled()) {
+			// 从最早的历史消息开始裁剪；裁剪后如果以助手消息开头，连同它一起去掉，保持一问一答成对
+			while (!history.isEmpty() && (systemCount + historyCount + currentCount > properties.getMaxTokens()
+					|| (trimmed > 0 && history.get(0).getMessageType() == MessageType.ASSISTANT))) {
+				history.remove(0);
+				historyCount -= historyCounts.remove(0);
+				trimmed++;
+			}
+		}
+		int total = systemCount + historyCount + currentCount;
+
+		systemTokens.record(systemCount);
+		historyTokens.record(historyCount);
+		contextTokens.record(contextCount);
+		totalTokens.record(total);
+		log.debug("提示词 token 数：人设 {}，记忆 {}，检索 {}，合计 {}，裁剪历史消息 {} 条",
+				systemCount, historyCount, contextCount, total, trimmed);
+		if (total > properties.getMaxTokens()) {
+			overBudget.increment();
+			log.warn("提示词超出预算：{} > {}（人设 {}，本轮问题及检索内容 {}）",
+					total, properties.getMaxTokens(), systemCount, currentCount);
+		}
+		if (trimmed == 0) {
+			return request;
+		}
+		trimmedMessages.increment(trimmed);
+
+		List<Message> assembled = new ArrayList<>(system.size() + history.size() + 1);
+		assembled.addAll(system);
+		assembled.addAll(history);
+		if (current >= 0) {
+			assembled.add(messages.get(current));
+		}
+		return request.mutate()
+				.prompt(new Prompt(assembled, request.prompt().getOptions()))
+				.build();
+	}
+
+	private int retrievedContextTokens(ChatClientRequest request) {
+		Object documents = request.context().get(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS);
+		if (!(documents instanceof List<?> list)) {
+			return 0;
+		}
+		int count = 0;
+		for (Object document : list) {
+			if (document instanceof Document retrieved && retrieved.getText() != null) {
+				count += tokenCountEstimator.estimate(retrieved.getText());
+			}
+		}
+		return count;
+	}
+
+	private int count(Message message) {
+		return message.getText() == null ? 0 : tokenCountEstimator.estimate(message.getText());
+	}
+
+	private static int lastUserMessage(List<Message> messages) {
+		for (int i = messages.size() - 1; i >= 0; i--) {
+			if (messages.get(i).getMessageType() == MessageType.USER) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static DistributionSummary tokens(MeterRegistry meterRegistry, String part) {
+		return DistributionSummary.builder("xilian.prompt.tokens")
+				.tag("part", part)
+				.baseUnit("tokens")
+				.register(meterRegistry);
+	}
+}
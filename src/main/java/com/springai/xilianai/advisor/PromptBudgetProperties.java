@@ -0,0 +1,24 @@
+package com.springai.xilianai.advisor;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 发给模型的提示词总预算（人设 + 对话记忆 + 检索内容）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "xilian.prompt")
+public class PromptBudgetProperties {
+
+    /**
+     * 是否在超出预算时裁剪对话记忆
+     */
+    private boolean enabled = true;
+
+    /**
+     * 整个提示词的 token 上限
+     */
+    private int maxTokens = 6000;
+}
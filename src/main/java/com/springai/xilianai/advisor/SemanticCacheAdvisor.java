@@ -0,0 +1,296 @@
+package com.springai.xilianai.advisor;
+
+import com.springai.xilianai.rag.QueryEmbeddingCache;
+import com.springai.xilianai.rag.VectorStoreReindexedEvent;
+import com.springai.xilianai.rag.Vectors;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClientMessageAggregator;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 语义回答缓存 Advisor
+ * 把用户问题向量化后在本地缓存中查找相似度超过阈值的历史问题，命中时直接以流的形式回放缓存的回答，不调用检索和大模型。
+ * 未命中时正常生成，回答完整结束后写入缓存；缓存按有效期和最久未命中（LRU）淘汰。
+ * 排在对话记忆 Advisor 之后、检索增强 Advisor 之前，命中时回放的回答同样会写入对话记忆。
+ * <p>
+ * 缓存条目按系统提示词（人设）的指纹隔离，换了人设的回答不会互相命中；不同会话之间可以命中，反复被问到的设定问题只生成一次。
+ * 只有不带历史消息的请求（会话的第一轮）生成的回答才写入缓存：这样的回答只取决于人设和问题本身，
+ * 回放给其他会话、或同一会话后面再问到同一个问题时都成立；带历史消息生成的回答可能引用了前文，不写入缓存。
+ */
+@Slf4j
+@Component
+public class SemanticCacheAdvisor implements CallAdvisor, StreamAdvisor {
+
+	/**
+	 * 请求上下文参数：为 true 时本次请求既不查缓存也不写缓存
+	 */
+	public static final String BYPASS = "semantic_cache_bypass";
+
+	/**
+	 * 对话记忆 Advisor 的默认顺序是 HIGHEST_PRECEDENCE + 1000，检索增强 Advisor 的默认顺序是 0
+	 */
+	private static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 2000;
+
+	private final QueryEmbeddingCache queryEmbeddingCache;
+	private final SemanticCacheProperties properties;
+	private final List<Pattern> bypassPatterns;
+
+	/**
+	 * 上下文指纹 + 问题文本 -> 缓存条目，按访问顺序排列（最久未命中的在最前）
+	 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final Counter hitCounter;
+	private final Counter missCounter;
+	private final Counter bypassCounter;
+	private final Counter evictionCounter;
+
+	public SemanticCacheAdvisor(QueryEmbeddingCache queryEmbeddingCache, SemanticCacheProperties properties,
+								MeterRegistry meterRegistry) {
+		this.queryEmbeddingCache = queryEmbeddingCache;
+		this.properties = properties;
+		this.bypassPatterns = properties.getBypassConversations().stream().map(Pattern::compile).toList();
+		this.hitCounter = meterRegistry.counter("xilian.semantic.cache", "result", "hit");
+		this.missCounter = meterRegistry.counter("xilian.semantic.cache", "result", "miss");
+		this.bypassCounter = meterRegistry.counter("xilian.semantic.cache", "result", "bypass");
+		this.evictionCounter = meterRegistry.counter("xilian.semantic.cache.evictions");
+		meterRegistry.gauge("xilian.semantic.cache.size", entries, cache -> size());
+	}
+
+	@Override
+	public String getName() {
+		return this.getClass().getSimpleName();
+	}
+
+	@Override
+	public int getOrder() {
+		return ORDER;
+	}
+
+	@Override
+	public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain chain) {
+		String question = cacheableQuestion(chatClientRequest);
+		if (question == null) {
+			return chain.nextCall(chatClientRequest);
+		}
+		String context = contextFingerprint(chatClientRequest);
+		float[] embedding = embed(question);
+		String answer = lookup(context, embedding);
+		if (answer != null) {
+			return toResponse(answer, chatClientRequest);
+		}
+		ChatClientResponse chatClientResponse = chain.nextCall(chatClientRequest);
+		if (!hasHistory(chatClientRequest)) {
+			store(context, question, embedding, chatClientResponse);
+		}
+		return chatClientResponse;
+	}
+
+	@Override
+	public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain chain) {
+		String question = cacheableQuestion(chatClientRequest);
+		if (question == null) {
+			return chain.nextStream(chatClientRequest);
+		}
+		// 向量化和查找推迟到订阅时执行
+		return Flux.defer(() -> {
+			String context = contextFingerprint(chatClientRequest);
+			float[] embedding = embed(question);
+			String answer = lookup(context, embedding);
+			if (answer != null) {
+				return Flux.fromIterable(chunk(answer)).map(text -> toResponse(text, chatClientRequest));
+			}
+			Flux<ChatClientResponse> chatClientResponseFlux = chain.nextStream(chatClientRequest);
+			if (hasHistory(chatClientRequest)) {
+				return chatClientResponseFlux;
+			}
+			return (new ChatClientMessageAggregator()).aggregateChatClientResponse(chatClientResponseFlux,
+					response -> store(context, question, embedding, response));
+		});
+	}
+
+	/**
+	 * 清空缓存（知识库内容变化后缓存的回答可能过时）
+	 */
+	@EventListener(VectorStoreReindexedEvent.class)
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * 本次请求可以走缓存时返回用户问题，否则返回 null
+	 */
+	private String cacheableQuestion(ChatClientRequest request) {
+		if (!properties.isEnabled()) {
+			return null;
+		}
+		Object conversationId = request.context().get(ChatMemory.CONVERSATION_ID);
+		UserMessage userMessage = request.prompt().getUserMessage();
+		String question = userMessage == null || userMessage.getText() == null ? "" : userMessage.getText().trim();
+		if (Boolean.TRUE.equals(request.context().get(BYPASS))
+				|| question.length() < properties.getMinQuestionLength()
+				|| (conversationId != null && bypassPatterns.stream()
+				.anyMatch(pattern -> pattern.matcher(conversationId.toString()).matches()))) {
+			bypassCounter.increment();
+			return null;
+		}
+		return question;
+	}
+
+	/**
+	 * 上下文指纹：提示词中系统消息（人设）文本的 SHA-256，不包括对话记忆加入的历史消息
+	 */
+	private static String contextFingerprint(ChatClientRequest request) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (Message message : request.prompt().getInstructions()) {
+				if (message.getMessageType() != MessageType.SYSTEM) {
+					continue;
+				}
+				if (message.getText() != null) {
+					digest.update(message.getText().getBytes(StandardCharsets.UTF_8));
+				}
+				digest.update((byte) 0);
+			}
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 提示词中除系统消息和最后一条用户消息外还有其他消息，即对话记忆加入了历史
+	 */
+	private static boolean hasHistory(ChatClientRequest request) {
+		int others = 0;
+		for (Message message : request.prompt().getInstructions()) {
+			if (message.getMessageType() != MessageType.SYSTEM) {
+				others++;
+			}
+		}
+		return others > 1;
+	}
+
+	private float[] embed(String question) {
+		// 与检索增强共用问题向量缓存，一次对话只向量化一次
+		return Vectors.normalize(queryEmbeddingCache.embed(question));
+	}
+
+	private String lookup(String context, float[] embedding) {
+		long now = System.currentTimeMillis();
+		long ttlMillis = properties.getTtl().toMillis();
+		Entry best = null;
+		double bestScore = properties.getSimilarityThreshold();
+		synchronized (entries) {
+			Iterator<Entry> iterator = entries.values().iterator();
+			while (iterator.hasNext()) {
+				Entry entry = iterator.next();
+				if (now - entry.createdAt > ttlMillis) {
+					iterator.remove();
+					evictionCounter.increment();
+					continue;
+				}
+				if (!entry.context.equals(context)) {
+					continue;
+				}
+				double score = Vectors.dot(embedding, entry.embedding);
+				if (score >= bestScore) {
+					bestScore = score;
+					best = entry;
+				}
+			}
+			if (best != null) {
+				// 触发访问顺序更新
+				entries.get(best.key());
+			}
+		}
+		if (best == null) {
+			missCounter.increment();
+			return null;
+		}
+		hitCounter.increment();
+		log.info("语义缓存命中，相似度: {}，缓存问题: {}", String.format("%.4f", bestScore), best.question);
+		return best.answer;
+	}
+
+	private void store(String context, String question, float[] embedding, ChatClientResponse response) {
+		if (response.chatResponse() == null || response.chatResponse().getResult() == null) {
+			return;
+		}
+		String answer = response.chatResponse().getResult().getOutput().getText();
+		if (answer == null || answer.isBlank()) {
+			return;
+		}
+		synchronized (entries) {
+			Entry entry = new Entry(context, question, embedding, answer, System.currentTimeMillis());
+			entries.put(entry.key(), entry);
+			Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+			while (entries.size() > properties.getMaxEntries() && iterator.hasNext()) {
+				iterator.next();
+				iterator.remove();
+				evictionCounter.increment();
+			}
+		}
+	}
+
+	private List<String> chunk(String answer) {
+		int size = Math.max(1, properties.getReplayChunkSize());
+		List<String> chunks = new ArrayList<>();
+		for (int from = 0; from < answer.length(); from += size) {
+			chunks.add(answer.substring(from, Math.min(from + size, answer.length())));
+		}
+		return chunks;
+	}
+
+	private static ChatClientResponse toResponse(String text, ChatClientRequest request) {
+		ChatResponse chatResponse = new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+		return ChatClientResponse.builder()
+				.chatResponse(chatResponse)
+				.context(request.context())
+				.build();
+	}
+
+	private record Entry(String context, String question, float[] embedding, String answer, long createdAt) {
+
+		String key() {
+			return context + '\u0000' + question;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.springai.xilianai.advisor;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 语义回答缓存配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "xilian.semantic-cache")
+public class SemanticCacheProperties {
+
+    /**
+     * 是否启用语义缓存
+     */
+    private boolean enabled = true;
+
+    /**
+     * 问题向量的余弦相似度不低于该值时视为同一个问题
+     */
+    private double similarityThreshold = 0.95;
+
+    /**
+     * 最多缓存的问答条数，超出时淘汰最久未命中的
+     */
+    private int maxEntries = 1000;
+
+    /**
+     * 缓存条目的有效期
+     */
+    private Duration ttl = Duration.ofHours(6);
+
+    /**
+     * 少于该字数的问题（如“嗯”“好的”）依赖上下文，不走缓存
+     */
+    private int minQuestionLength = 4;
+
+    /**
+     * 不走缓存的会话 ID（正则表达式）
+     */
+    private List<String> bypassConversations = new ArrayList<>();
+
+    /**
+     * 命中缓存时回放回答的分块字数
+     */
+    private int replayChunkSize = 16;
+}
@@ -0,0 +1,311 @@
+package com.springai.xilianai.chatmemory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 带写回（write-behind）的对话记忆缓存
+ * <p>
+ * 活跃会话的完整历史保存在内存中，按消息字符数计算容量，超出上限时淘汰最久未访问的会话（LRU）。
+ * {@link #add} 只更新内存并登记待写入的消息，后台定时任务把同一会话一段时间内的多次写入合并成一次追加写盘；
+ * 应用关闭时会把所有待写入消息刷到磁盘。
+ * <p>
+ * 同一会话的加载、追加、刷盘和淘汰都在该会话的锁内完成，保证写盘顺序与追加顺序一致；不同会话互不阻塞。
+ */
+@Slf4j
+public class CachedChatMemory implements ChatMemory {
+
+    /**
+     * 每条消息除正文外的固定开销（按字符估算）
+     */
+    private static final int MESSAGE_OVERHEAD = 64;
+
+    private final FileBasedChatMemory delegate;
+    private final long maxWeight;
+    private final ScheduledExecutorService flushScheduler;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConversationLocks locks = new ConversationLocks();
+    private final AtomicLong totalWeight = new AtomicLong();
+    /**
+     * 逻辑时钟，记录每个会话最近一次访问的先后顺序
+     */
+    private final AtomicLong accessClock = new AtomicLong();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter flushCounter;
+    private final Counter flushFailureCounter;
+    private final Counter evictionCounter;
+
+    public CachedChatMemory(FileBasedChatMemory delegate, long maxWeight, Duration flushInterval,
+                            MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxWeight = maxWeight;
+        this.hitCounter = meterRegistry.counter("xilian.chat.memory.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("xilian.chat.memory.cache", "result", "miss");
+        this.flushCounter = meterRegistry.counter("xilian.chat.memory.cache.flushes");
+        this.flushFailureCounter = meterRegistry.counter("xilian.chat.memory.cache.flush.failures");
+        this.evictionCounter = meterRegistry.counter("xilian.chat.memory.cache.evictions");
+        meterRegistry.gauge("xilian.chat.memory.cache.weight", totalWeight);
+
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-memory-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = flushInterval.toMillis();
+        this.flushScheduler.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        ReentrantLock lock = locks.lock(conversationId);
+        try {
+            Entry entry = loadEntry(conversationId);
+            entry.messages.addAll(messages);
+            entry.pending.addAll(messages);
+            long added = weigh(messages);
+            entry.weight += added;
+            totalWeight.addAndGet(added);
+        } finally {
+            lock.unlock();
+        }
+        evictIfNeeded(conversationId);
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        List<Message> result;
+        ReentrantLock lock = locks.lock(conversationId);
+        try {
+            result = new ArrayList<>(loadEntry(conversationId).messages);
+        } finally {
+            lock.unlock();
+        }
+        evictIfNeeded(conversationId);
+        return result;
+    }
+
+    /**
+     * 读取最后 N 条消息：会话在缓存中时直接取内存尾部，否则只从磁盘读取尾部记录，不把整段历史装入缓存
+     */
+    public List<Message> getLast(String conversationId, int lastN) {
+        ReentrantLock lock = locks.lock(conversationId);
+        try {
+            Entry entry = entries.get(conversationId);
+            if (entry == null) {
+                missCounter.increment();
+                return delegate.get(conversationId, lastN);
+            }
+            hitCounter.increment();
+            entry.lastAccess = accessClock.incrementAndGet();
+            int from = Math.max(0, entry.messages.size() - lastN);
+            return new ArrayList<>(entry.messages.subList(from, entry.messages.size()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读取第 from 条（含）到第 to 条（不含）消息：会话在缓存中时直接取内存，否则只从磁盘解码这一段，不把整段历史装入缓存
+     */
+    public List<Message> getRange(String conversationId, int from, int to) {
+        ReentrantLock lock = locks.lock(conversationId);
+        try {
+            Entry entry = entries.get(conversationId);
+            if (entry == null) {
+                missCounter.increment();
+                return delegate.get(conversationId, from, to);
+            }
+            hitCounter.increment();
+            entry.lastAccess = accessClock.incrementAndGet();
+            int end = Math.min(to, entry.messages.size());
+            return from >= end ? new ArrayList<>() : new ArrayList<>(entry.messages.subList(from, end));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 会话的消息总数（包括尚未写盘的消息）
+     */
+    public long size(String conversationId) {
+        ReentrantLock lock = locks.lock(conversationId);
+        try {
+            Entry entry = entries.get(conversationId);
+            return entry != null ? entry.messages.size() : delegate.size(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        ReentrantLock lock = locks.lock(conversationId);
+        try {
+            Entry entry = entries.remove(conversationId);
+            if (entry != null) {
+                totalWeight.addAndGet(-entry.weight);
+            }
+            delegate.clear(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 把所有会话的待写入消息刷到磁盘，每个会话只追加一次
+     */
+    public void flush() {
+        for (String conversationId : entries.keySet()) {
+            ReentrantLock lock = locks.lock(conversationId);
+            try {
+                Entry entry = entries.get(conversationId);
+                if (entry != null) {
+                    writePending(conversationId, entry);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 应用关闭时调用：停止定时任务并刷盘
+     */
+    public void shutdown() {
+        flushScheduler.shutdown();
+        flush();
+        log.info("对话记忆缓存已刷盘并关闭");
+    }
+
+    public FileBasedChatMemory getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 调用方已持有会话锁
+     */
+    private Entry loadEntry(String conversationId) {
+        Entry entry = entries.get(conversationId);
+        if (entry != null) {
+            hitCounter.increment();
+        } else {
+            missCounter.increment();
+            entry = new Entry(new ArrayList<>(delegate.get(conversationId)));
+            entry.weight = weigh(entry.messages);
+            totalWeight.addAndGet(entry.weight);
+            entries.put(conversationId, entry);
+        }
+        entry.lastAccess = accessClock.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * 超出容量时从最久未访问的会话开始淘汰（当前会话除外），淘汰前先把未写入的消息写盘
+     */
+    private void evictIfNeeded(String currentConversationId) {
+        if (totalWeight.get() <= maxWeight) {
+            return;
+        }
+        List<Map.Entry<String, Long>> candidates = new ArrayList<>();
+        entries.forEach((id, entry) -> {
+            if (!id.equals(currentConversationId)) {
+                candidates.add(Map.entry(id, entry.lastAccess));
+            }
+        });
+        candidates.sort(Map.Entry.comparingByValue(Comparator.naturalOrder()));
+        for (Map.Entry<String, Long> candidate : candidates) {
+            if (totalWeight.get() <= maxWeight) {
+                return;
+            }
+            String conversationId = candidate.getKey();
+            ReentrantLock lock = locks.lock(conversationId);
+            try {
+                Entry entry = entries.get(conversationId);
+                // 排序之后被再次访问过的会话不淘汰
+                if (entry == null || entry.lastAccess != candidate.getValue()) {
+                    continue;
+                }
+                // 写盘失败的会话留在缓存里，等下次刷盘重试，否则这些消息就丢了
+                if (!writePending(conversationId, entry)) {
+                    continue;
+                }
+                entries.remove(conversationId);
+                totalWeight.addAndGet(-entry.weight);
+                evictionCounter.increment();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 调用方已持有会话锁；写盘失败时保留待写入消息，返回 false
+     */
+    private boolean writePending(String conversationId, Entry entry) {
+        if (entry.pending.isEmpty()) {
+            return true;
+        }
+        try {
+            delegate.append(conversationId, entry.pending);
+        } catch (IOException e) {
+            flushFailureCounter.increment();
+            log.error("对话记忆写盘失败，保留 {} 条待写入消息等待重试，chatId: {}",
+                    entry.pending.size(), conversationId, e);
+            return false;
+        }
+        entry.pending = new ArrayList<>();
+        flushCounter.increment();
+        return true;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("对话记忆缓存刷盘失败", e);
+        }
+    }
+
+    private static long weigh(List<Message> messages) {
+        long weight = 0;
+        for (Message message : messages) {
+            String text = message.getText();
+            weight += MESSAGE_OVERHEAD + (text == null ? 0 : text.length());
+        }
+        return weight;
+    }
+
+    private static class Entry {
+        private final List<Message> messages;
+        private List<Message> pending = new ArrayList<>();
+        private long weight;
+        private volatile long lastAccess;
+
+        private Entry(List<Message> messages) {
+            this.messages = messages;
+        }
+    }
+}
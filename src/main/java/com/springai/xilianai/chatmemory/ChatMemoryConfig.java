@@ -0,0 +1,48 @@
+package com.springai.xilianai.chatmemory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 对话记忆配置 Bean：文件持久化 + 内存写回缓存 + 发给模型的记忆窗口
+ */
+@Configuration
+public class ChatMemoryConfig {
+
+    @Bean
+    public FileBasedChatMemory fileBasedChatMemory(ChatMemoryProperties properties) {
+        return new FileBasedChatMemory(properties.getDir());
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public CachedChatMemory cachedChatMemory(FileBasedChatMemory fileBasedChatMemory,
+                                             ChatMemoryProperties properties,
+                                             MeterRegistry meterRegistry) {
+        return new CachedChatMemory(fileBasedChatMemory,
+                properties.getCache().getMaxWeight(),
+                properties.getCache().getFlushInterval(),
+                meterRegistry);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(prefix = "xilian.chat-memory.summary", name = "enabled", havingValue = "true")
+    public ConversationSummarizer conversationSummarizer(CachedChatMemory cachedChatMemory,
+                                                         ChatModel dashscopeChatModel,
+                                                         ChatMemoryProperties properties) {
+        return new ConversationSummarizer(cachedChatMemory, dashscopeChatModel, properties.getDir(),
+                properties.getWindow().getMaxMessages(),
+                properties.getSummary().getTriggerMessages(),
+                properties.getSummary().getMaxLength());
+    }
+
+    @Bean
+    public WindowedChatMemory windowedChatMemory(CachedChatMemory cachedChatMemory,
+                                                 ChatMemoryProperties properties,
+                                                 ObjectProvider<ConversationSummarizer> summarizer) {
+        return new WindowedChatMemory(cachedChatMemory, properties.getWindow(), summarizer.getIfAvailable());
+    }
+}
@@ -0,0 +1,91 @@
+package com.springai.xilianai.chatmemory;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 对话记忆配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "xilian.chat-memory")
+public class ChatMemoryProperties {
+
+    /**
+     * 对话记忆文件保存目录
+     */
+    private String dir = System.getProperty("user.dir") + "/tmp/chat-memory";
+
+    private Cache cache = new Cache();
+
+    private Window window = new Window();
+
+    private Summary summary = new Summary();
+
+    @Data
+    public static class Cache {
+        /**
+         * 缓存中所有会话的总容量上限（按消息字符数估算）
+         */
+        private long maxWeight = 2_000_000;
+
+        /**
+         * 后台批量写盘的间隔
+         */
+        private Duration flushInterval = Duration.ofSeconds(2);
+    }
+
+    /**
+     * 记忆窗口策略
+     */
+    public enum Strategy {
+        /**
+         * 发送完整历史
+         */
+        FULL,
+        /**
+         * 只发送最后 N 条消息
+         */
+        LAST_N,
+        /**
+         * 在最后 N 条消息内，从新到旧保留不超过 token 预算的消息
+         */
+        TOKEN_BUDGET
+    }
+
+    @Data
+    public static class Window {
+        private Strategy strategy = Strategy.TOKEN_BUDGET;
+
+        /**
+         * 窗口内最多保留的消息条数
+         */
+        private int maxMessages = 20;
+
+        /**
+         * TOKEN_BUDGET 策略下窗口的 token 上限
+         */
+        private int maxTokens = 3000;
+    }
+
+    @Data
+    public static class Summary {
+        /**
+         * 是否在后台对窗口之外的旧消息做滚动摘要
+         */
+        private boolean enabled = false;
+
+        /**
+         * 窗口之外累计多少条未摘要的消息后触发一次摘要
+         */
+        private int triggerMessages = 10;
+
+        /**
+         * 摘要的最大字数
+         */
+        private int maxLength = 500;
+    }
+}
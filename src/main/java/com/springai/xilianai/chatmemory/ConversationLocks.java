@@ -0,0 +1,49 @@
+package com.springai.xilianai.chatmemory;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按会话划分的锁：同一会话的读写互斥，不同会话之间基本互不阻塞
+ * <p>
+ * 锁的数量固定，会话按 hash 分到其中一把，会话再多也不会让锁无限增长；
+ * 两个会话偶尔落到同一把锁上只是多一次等待。持有一把锁时不要再去获取另一个会话的锁，否则可能死锁
+ */
+class ConversationLocks {
+
+    private static final int DEFAULT_STRIPES = 256;
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    ConversationLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes 锁的数量，向上取到 2 的幂
+     */
+    ConversationLocks(int stripes) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * 获取并锁定会话锁，调用方负责在 finally 中 unlock
+     */
+    ReentrantLock lock(String conversationId) {
+        ReentrantLock lock = stripes[spread(conversationId.hashCode()) & mask];
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * 把 hash 的高位混到低位，和 ConcurrentHashMap 的做法一致，避免只看低位时分布不均
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,219 @@
+package com.springai.xilianai.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatModel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 后台滚动摘要：把记忆窗口之外的旧消息压缩成一段摘要
+ * <p>
+ * 摘要保存在 {@code <chatId>.summary} 文件中，第一行是已被摘要覆盖的消息条数，其余是摘要正文。
+ * 完整历史仍然保留在对话日志里，摘要只用于构造发给模型的上下文。
+ * <p>
+ * 摘要失败时只记录日志，下一轮再试；每次最多摘要 {@link #maxBatch()} 条，落后很多时分几轮追上，
+ * 期间窗口由 {@link #maxWindow()} 限制长度，不会随着失败无限变长。
+ */
+@Slf4j
+public class ConversationSummarizer {
+
+    private static final String SUMMARY_SUFFIX = ".summary";
+
+    private final CachedChatMemory store;
+    private final ChatModel chatModel;
+    private final String baseDir;
+    private final int windowMessages;
+    private final int triggerMessages;
+    private final int maxLength;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    /**
+     * 正在摘要的会话，避免同一会话重复提交
+     */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    /**
+     * 每个会话当前的摘要，没有摘要的会话也缓存一个空的 {@link Slot}，不必每轮都去读文件
+     */
+    private final ConcurrentHashMap<String, Slot> summaries = new ConcurrentHashMap<>();
+
+    public ConversationSummarizer(CachedChatMemory store, ChatModel chatModel, String baseDir,
+                                  int windowMessages, int triggerMessages, int maxLength) {
+        this.store = store;
+        this.chatModel = chatModel;
+        this.baseDir = baseDir;
+        this.windowMessages = windowMessages;
+        this.triggerMessages = triggerMessages;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * 当前摘要，没有摘要时返回 null
+     */
+    public Summary getSummary(String conversationId) {
+        return slot(conversationId).summary();
+    }
+
+    /**
+     * 窗口的硬上限：正常情况下窗口之外攒够 triggerMessages 条就会摘要，留出一倍余量给后台摘要的耗时；
+     * 摘要一直失败时超出上限的旧消息不再交给模型
+     */
+    public int maxWindow() {
+        return windowMessages + 2 * triggerMessages;
+    }
+
+    /**
+     * 窗口之外累计的未摘要消息达到阈值时，提交一次后台摘要
+     */
+    public void maybeSummarize(String conversationId) {
+        Slot start = slot(conversationId);
+        long total = store.size(conversationId);
+        long covered = start.summary() == null ? 0 : start.summary().coveredCount();
+        long summarizeUntil = Math.min(total - windowMessages, covered + maxBatch());
+        if (summarizeUntil - covered < triggerMessages || !inFlight.add(conversationId)) {
+            return;
+        }
+        executor.submit(() -> {
+            try {
+                summarize(conversationId, start, (int) covered, (int) summarizeUntil);
+            } catch (Exception e) {
+                log.error("对话摘要失败，下一轮重试，chatId: {}", conversationId, e);
+            } finally {
+                inFlight.remove(conversationId);
+            }
+        });
+    }
+
+    public void clear(String conversationId) {
+        // 与写入摘要互斥：清空之后，清空前开始的摘要不会再写回来
+        summaries.compute(conversationId, (id, current) -> {
+            try {
+                Files.deleteIfExists(getSummaryFile(conversationId));
+            } catch (IOException e) {
+                log.error("删除对话摘要失败，chatId: {}", conversationId, e);
+            }
+            return null;
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 一次摘要最多包含的消息条数，落后太多时分几次追上，提示词长度有上限
+     */
+    private int maxBatch() {
+        return Math.max(triggerMessages, windowMessages);
+    }
+
+    private Slot slot(String conversationId) {
+        return summaries.computeIfAbsent(conversationId, id -> new Slot(readSummary(id)));
+    }
+
+    /**
+     * @param start 提交摘要时的摘要槽位；写入前槽位已被替换（会话被清空或已有更新的摘要）时丢弃本次结果
+     */
+    private void summarize(String conversationId, Slot start, int from, int to) {
+        List<Message> messages = store.getRange(conversationId, from, to);
+        if (messages.size() < to - from) {
+            log.info("对话在摘要前已变化，跳过本次摘要，chatId: {}", conversationId);
+            return;
+        }
+        Summary previous = start.summary();
+
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("请把下面的对话内容整理成一段简洁的摘要，保留人物、事件、约定和用户偏好等关键信息，")
+                .append("不超过").append(maxLength).append("字，只输出摘要本身。\n");
+        if (previous != null) {
+            prompt.append("已有摘要：\n").append(previous.text()).append("\n");
+        }
+        prompt.append("新的对话：\n");
+        for (Message message : messages) {
+            prompt.append(message.getMessageType().getValue()).append(": ").append(message.getText()).append("\n");
+        }
+
+        String text = chatModel.call(prompt.toString());
+        Summary summary = new Summary(to, text);
+        Slot written = summaries.computeIfPresent(conversationId, (id, current) -> {
+            if (current != start) {
+                return current;
+            }
+            try {
+                writeSummary(conversationId, summary);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new Slot(summary);
+        });
+        if (written == null || written.summary() != summary) {
+            log.info("对话在摘要期间被清空或已更新，丢弃本次摘要，chatId: {}", conversationId);
+            return;
+        }
+        log.info("对话摘要已更新，chatId: {}，覆盖消息数: {}", conversationId, to);
+    }
+
+    private Summary readSummary(String conversationId) {
+        Path file = getSummaryFile(conversationId);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            int newline = content.indexOf('\n');
+            return new Summary(Integer.parseInt(content.substring(0, newline).trim()), content.substring(newline + 1));
+        } catch (IOException | RuntimeException e) {
+            log.error("读取对话摘要失败，chatId: {}", conversationId, e);
+            return null;
+        }
+    }
+
+    private void writeSummary(String conversationId, Summary summary) throws IOException {
+        Path file = getSummaryFile(conversationId);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, summary.coveredCount() + "\n" + summary.text(), StandardCharsets.UTF_8);
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path getSummaryFile(String conversationId) {
+        return Paths.get(baseDir, conversationId + SUMMARY_SUFFIX);
+    }
+
+    /**
+     * 摘要缓存的槽位，按对象身份比较：每次读取文件、写入摘要都换一个新槽位，用来判断摘要期间会话是否变化
+     */
+    private static final class Slot {
+        private final Summary summary;
+
+        Slot(Summary summary) {
+            this.summary = summary;
+        }
+
+        Summary summary() {
+            return summary;
+        }
+    }
+
+    /**
+     * @param coveredCount 摘要覆盖了会话中前多少条消息
+     * @param text         摘要正文
+     */
+    public record Summary(int coveredCount, String text) {
+    }
+}
@@ -3,30 +3,93 @@ package com.springai.xilianai.chatmemory;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.Pool;
+import lombok.extern.slf4j.Slf4j;
 import org.objenesis.strategy.StdInstantiatorStrategy;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.Message;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
 
 /**
  * 基于文件持久化的对话记忆
+ * <p>
+ * 每个会话对应一个只追加的日志文件（{@code <chatId>.log}），日志由长度前缀的 Kryo 记录组成，
+ * 每条记录保存一条消息：{@code [int 长度][int CRC32][Kryo 数据]}。
+ * 旁边的尾部索引文件（{@code <chatId>.idx}）按顺序记录每条消息在日志中的起始偏移（8 字节定长），
+ * 因此 {@link #add} 只追加本轮的新消息，{@link #get(String, int)} 可以直接定位到最后 N 条消息读取，
+ * 不必解码整段历史。
+ * <p>
+ * 旧版本的 {@code <chatId>.kryo} 文件（整段 ArrayList）会在第一次访问时迁移为日志格式。
+ * 进程崩溃留下的半条记录会在第一次访问时被检测出来，并通过压缩重写日志和索引。
+ * 日志里的记录只追加、从不改写或单独删除（清空会话直接删除文件），除了残缺的尾部之外不会产生垃圾数据，
+ * 所以不做按大小或垃圾比例触发的定期压缩，压缩只用于修复尾部。
+ * <p>
+ * 线程安全：Kryo 实例不是线程安全的，这里从池中借用；同一会话的所有读写在会话锁内完成，
+ * 不同会话之间不会互相阻塞；整体重写（迁移、压缩）先写临时文件再原子重命名。
  */
+@Slf4j
 public class FileBasedChatMemory implements ChatMemory {
 
+    static final String LOG_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".idx";
+    static final String LEGACY_SUFFIX = ".kryo";
+
+    /**
+     * 每条记录头部：长度 + CRC32
+     */
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    /**
+     * 单条记录的最大长度；头部损坏时读出的长度可能很大，超过该值按残缺记录处理，不按它分配内存
+     */
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+
     private final String BASE_DIR;
-    private static final Kryo kryo = new Kryo();
 
-    static {
-        kryo.setRegistrationRequired(false);
-        // 设置实例化策略
-        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
-    }
+    /**
+     * Kryo 实例池（线程安全、软引用，最多保留 32 个空闲实例）
+     */
+    private static final Pool<Kryo> KRYO_POOL = new Pool<>(true, true, 32) {
+        @Override
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationRequired(false);
+            // 设置实例化策略
+            kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+            return kryo;
+        }
+    };
+
+    private final ConversationLocks locks = new ConversationLocks();
+
+    /**
+     * 本进程内已经校验过尾部完整性的会话
+     */
+    private final Set<String> verifiedConversations = ConcurrentHashMap.newKeySet();
 
     // 构造对象时，指定文件保存目录
     public FileBasedChatMemory(String dir) {
@@ -39,70 +102,471 @@ public class FileBasedChatMemory implements ChatMemory {
 
     @Override
     public void add(String conversationId, List<Message> messages) {
-        List<Message> conversationMessages = getOrCreateConversation(conversationId);
-        conversationMessages.addAll(messages);
-        saveConversation(conversationId, conversationMessages);
+        try {
+            append(conversationId, messages);
+        } catch (IOException e) {
+            log.error("追加对话记忆失败，chatId: {}", conversationId, e);
+        }
+    }
+
+    /**
+     * 追加消息，写盘失败时抛出异常并把日志和索引截回写入前的长度，调用方可以原样重试而不会重复写入
+     */
+    public void append(String conversationId, List<Message> messages) throws IOException {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        ReentrantLock lock = locks.lock(conversationId);
+        try {
+            prepareConversation(conversationId);
+            Path logPath = getLogFile(conversationId).toPath();
+            Path indexPath = getIndexFile(conversationId).toPath();
+            long logSize = Files.exists(logPath) ? Files.size(logPath) : 0L;
+            long indexSize = Files.exists(indexPath) ? Files.size(indexPath) : 0L;
+            try {
+                appendRecords(conversationId, messages);
+            } catch (IOException e) {
+                rollback(conversationId, logPath, logSize, indexPath, indexSize);
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public List<Message> get(String conversationId) {
-        return getOrCreateConversation(conversationId);
+        ReentrantLock lock = locks.lock(conversationId);
+        try {
+            prepareConversation(conversationId);
+            return readRecordsFrom(getLogFile(conversationId).toPath(), 0L);
+        } catch (IOException e) {
+            log.error("读取对话记忆失败，chatId: {}", conversationId, e);
+            return new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读取最后 N 条消息，只解码尾部记录
+     */
+    public List<Message> get(String conversationId, int lastN) {
+        if (lastN <= 0) {
+            return new ArrayList<>();
+        }
+        ReentrantLock lock = locks.lock(conversationId);
+        try {
+            prepareConversation(conversationId);
+            long count = indexedCount(conversationId);
+            if (count <= lastN) {
+                return readRecordsFrom(getLogFile(conversationId).toPath(), 0L);
+            }
+            long offset = readIndexEntry(getIndexFile(conversationId).toPath(), count - lastN);
+            return readRecordsFrom(getLogFile(conversationId).toPath(), offset);
+        } catch (IOException e) {
+            log.error("读取对话记忆尾部失败，chatId: {}", conversationId, e);
+            return new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读取第 from 条（含）到第 to 条（不含）消息：按索引定位起点，只解码这一段记录
+     */
+    public List<Message> get(String conversationId, int from, int to) {
+        if (from < 0 || to <= from) {
+            return new ArrayList<>();
+        }
+        ReentrantLock lock = locks.lock(conversationId);
+        try {
+            prepareConversation(conversationId);
+            if (from >= indexedCount(conversationId)) {
+                return new ArrayList<>();
+            }
+            long offset = readIndexEntry(getIndexFile(conversationId).toPath(), from);
+            return readRecordsFrom(getLogFile(conversationId).toPath(), offset, to - from);
+        } catch (IOException e) {
+            log.error("读取对话记忆区间失败，chatId: {}", conversationId, e);
+            return new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 会话中已持久化的消息条数（来自尾部索引，不读取日志）
+     */
+    public long size(String conversationId) {
+        ReentrantLock lock = locks.lock(conversationId);
+        try {
+            prepareConversation(conversationId);
+            return indexedCount(conversationId);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void clear(String conversationId) {
-        File file = getConversationFile(conversationId);
-        if (file.exists()) {
-            file.delete();
+        ReentrantLock lock = locks.lock(conversationId);
+        try {
+            deleteIfExists(getLogFile(conversationId));
+            deleteIfExists(getIndexFile(conversationId));
+            deleteIfExists(getLegacyFile(conversationId));
+            verifiedConversations.remove(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 压缩会话日志：只保留索引可达且校验通过的完整记录，写入临时文件后整体替换日志和索引
+     */
+    public void compact(String conversationId) {
+        ReentrantLock lock = locks.lock(conversationId);
+        try {
+            Path logPath = getLogFile(conversationId).toPath();
+            if (!Files.exists(logPath)) {
+                return;
+            }
+            List<byte[]> payloads = scanValidPayloads(logPath);
+            rewrite(conversationId, payloads);
+            log.info("对话记忆压缩完成，chatId: {}，记录数: {}", conversationId, payloads.size());
+        } catch (IOException e) {
+            log.error("对话记忆压缩失败，chatId: {}", conversationId, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long indexedCount(String conversationId) {
+        File indexFile = getIndexFile(conversationId);
+        return indexFile.exists() ? indexFile.length() / Long.BYTES : 0L;
+    }
+
+    /**
+     * 追加失败后截掉写了一半的日志和索引；截断也失败时交给下次访问的尾部检查修复（调用方已持有会话锁）
+     */
+    private void rollback(String conversationId, Path logPath, long logSize, Path indexPath, long indexSize) {
+        try {
+            truncate(logPath, logSize);
+            truncate(indexPath, indexSize);
+        } catch (IOException e) {
+            log.warn("回滚对话记忆写入失败，chatId: {}", conversationId, e);
         }
+        verifiedConversations.remove(conversationId);
     }
 
-    private List<Message> getOrCreateConversation(String conversationId) {
-        File file = getConversationFile(conversationId);
+    private static void truncate(Path path, long size) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (channel.size() > size) {
+                channel.truncate(size);
+            }
+        }
+    }
+
+    /**
+     * 首次访问会话时：迁移旧格式文件，并检查日志尾部是否有残缺记录（调用方已持有会话锁）
+     */
+    private void prepareConversation(String conversationId) {
+        if (verifiedConversations.contains(conversationId)) {
+            return;
+        }
+        try {
+            migrateLegacyIfNeeded(conversationId);
+            if (!isTailConsistent(conversationId)) {
+                log.warn("对话记忆日志尾部不完整，开始压缩修复，chatId: {}", conversationId);
+                compact(conversationId);
+            }
+            verifiedConversations.add(conversationId);
+        } catch (IOException e) {
+            log.error("对话记忆初始化失败，chatId: {}", conversationId, e);
+        }
+    }
+
+    /**
+     * 旧版 .kryo 文件（整段 ArrayList）迁移为日志格式，迁移成功后旧文件重命名为 .kryo.migrated 保留
+     */
+    @SuppressWarnings("unchecked")
+    private void migrateLegacyIfNeeded(String conversationId) throws IOException {
+        File legacyFile = getLegacyFile(conversationId);
+        if (!legacyFile.exists() || getLogFile(conversationId).exists()) {
+            return;
+        }
+        List<Message> messages;
+        Kryo kryo = KRYO_POOL.obtain();
+        try (Input input = new Input(new FileInputStream(legacyFile))) {
+            messages = kryo.readObject(input, ArrayList.class);
+        } finally {
+            KRYO_POOL.free(kryo);
+        }
+        List<byte[]> payloads = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            payloads.add(serialize(message));
+        }
+        rewrite(conversationId, payloads);
+        Files.move(legacyFile.toPath(), legacyFile.toPath().resolveSibling(legacyFile.getName() + ".migrated"),
+                StandardCopyOption.REPLACE_EXISTING);
+        log.info("旧版对话记忆已迁移为日志格式，chatId: {}，消息数: {}", conversationId, messages.size());
+    }
+
+    /**
+     * 索引最后一条记录的结尾应恰好等于日志长度，否则说明上次写入中途失败
+     */
+    private boolean isTailConsistent(String conversationId) throws IOException {
+        Path logPath = getLogFile(conversationId).toPath();
+        Path indexPath = getIndexFile(conversationId).toPath();
+        boolean logExists = Files.exists(logPath);
+        boolean indexExists = Files.exists(indexPath);
+        if (!logExists) {
+            return !indexExists;
+        }
+        long logSize = Files.size(logPath);
+        long indexSize = indexExists ? Files.size(indexPath) : 0L;
+        if (indexSize % Long.BYTES != 0) {
+            return false;
+        }
+        if (indexSize == 0) {
+            return logSize == 0;
+        }
+        long lastOffset = readIndexEntry(indexPath, indexSize / Long.BYTES - 1);
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+            if (lastOffset + RECORD_HEADER_BYTES > logSize) {
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(header, lastOffset);
+            header.flip();
+            int length = header.getInt();
+            return lastOffset + RECORD_HEADER_BYTES + length == logSize;
+        }
+    }
+
+    /**
+     * 一次顺序写入本轮所有消息，再把它们的偏移追加到索引
+     */
+    private void appendRecords(String conversationId, List<Message> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        long[] relativeOffsets = new long[messages.size()];
+        for (int i = 0; i < messages.size(); i++) {
+            relativeOffsets[i] = out.size();
+            writeRecord(out, serialize(messages.get(i)));
+        }
+        out.flush();
+
+        Path logPath = getLogFile(conversationId).toPath();
+        long base;
+        try (FileChannel channel = FileChannel.open(logPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            base = channel.size();
+            writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+        }
+
+        ByteBuffer index = ByteBuffer.allocate(relativeOffsets.length * Long.BYTES);
+        for (long relativeOffset : relativeOffsets) {
+            index.putLong(base + relativeOffset);
+        }
+        index.flip();
+        try (FileChannel channel = FileChannel.open(getIndexFile(conversationId).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            writeFully(channel, index);
+        }
+    }
+
+    /**
+     * 用给定记录整体重写日志和索引（先写临时文件，再替换）
+     */
+    private void rewrite(String conversationId, List<byte[]> payloads) throws IOException {
+        Path logPath = getLogFile(conversationId).toPath();
+        Path indexPath = getIndexFile(conversationId).toPath();
+        Path logTmp = logPath.resolveSibling(logPath.getFileName() + ".tmp");
+        Path indexTmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+
+        ByteArrayOutputStream logBytes = new ByteArrayOutputStream();
+        DataOutputStream logOut = new DataOutputStream(logBytes);
+        ByteBuffer index = ByteBuffer.allocate(payloads.size() * Long.BYTES);
+        for (byte[] payload : payloads) {
+            index.putLong(logOut.size());
+            writeRecord(logOut, payload);
+        }
+        logOut.flush();
+        Files.write(logTmp, logBytes.toByteArray());
+        Files.write(indexTmp, index.array());
+        moveAtomically(logTmp, logPath);
+        moveAtomically(indexTmp, indexPath);
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private List<Message> readRecordsFrom(Path logPath, long offset) throws IOException {
+        return readRecordsFrom(logPath, offset, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 从 offset 开始最多读取 limit 条记录
+     */
+    private List<Message> readRecordsFrom(Path logPath, long offset, int limit) throws IOException {
         List<Message> messages = new ArrayList<>();
-        if (file.exists()) {
-            try (Input input = new Input(new FileInputStream(file))) {
-                messages = kryo.readObject(input, ArrayList.class);
-            } catch (IOException e) {
-                e.printStackTrace();
+        if (!Files.exists(logPath)) {
+            return messages;
+        }
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+            channel.position(offset);
+            long remaining = channel.size() - offset;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            byte[] payload;
+            while (messages.size() < limit && (payload = readRecord(in, remaining)) != null) {
+                remaining -= RECORD_HEADER_BYTES + payload.length;
+                messages.add(deserialize(payload));
             }
         }
         return messages;
     }
 
-    private void saveConversation(String conversationId, List<Message> messages) {
-        File file = getConversationFile(conversationId);
-        try (Output output = new Output(new FileOutputStream(file))) {
-            kryo.writeObject(output, messages);
+    /**
+     * 从头扫描日志，遇到长度越界或 CRC 不匹配的记录即停止
+     */
+    private List<byte[]> scanValidPayloads(Path logPath) throws IOException {
+        List<byte[]> payloads = new ArrayList<>();
+        long remaining = Files.size(logPath);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logPath)))) {
+            byte[] payload;
+            while ((payload = readRecord(in, remaining)) != null) {
+                remaining -= RECORD_HEADER_BYTES + payload.length;
+                payloads.add(payload);
+            }
+        }
+        return payloads;
+    }
+
+    private static long readIndexEntry(Path indexPath, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+            channel.read(buffer, position * Long.BYTES);
+            buffer.flip();
+            return buffer.getLong();
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+        if (payload.length > MAX_RECORD_BYTES) {
+            throw new IOException("单条消息序列化后超过 " + MAX_RECORD_BYTES + " 字节: " + payload.length);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    /**
+     * 读取一条记录，日志结束或记录残缺时返回 null；长度为负、超过上限或超过文件剩余字节数的记录按残缺处理
+     *
+     * @param remaining 从当前位置到文件末尾的字节数
+     */
+    private static byte[] readRecord(DataInputStream in, long remaining) throws IOException {
+        if (remaining < RECORD_HEADER_BYTES) {
+            return null;
+        }
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 0 || length > MAX_RECORD_BYTES || length > remaining - RECORD_HEADER_BYTES) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            return (int) crc.getValue() == checksum ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte[] serialize(Message message) {
+        Kryo kryo = KRYO_POOL.obtain();
+        try (Output output = new Output(256, -1)) {
+            kryo.writeClassAndObject(output, message);
+            return output.toBytes();
+        } finally {
+            KRYO_POOL.free(kryo);
+        }
+    }
+
+    private static Message deserialize(byte[] payload) {
+        Kryo kryo = KRYO_POOL.obtain();
+        try (Input input = new Input(payload)) {
+            return (Message) kryo.readClassAndObject(input);
+        } finally {
+            KRYO_POOL.free(kryo);
+        }
+    }
+
+    private static void deleteIfExists(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
     }
 
-    private File getConversationFile(String conversationId) {
-        return new File(BASE_DIR, conversationId + ".kryo");
+    private File getLogFile(String conversationId) {
+        return new File(BASE_DIR, conversationId + LOG_SUFFIX);
+    }
+
+    private File getIndexFile(String conversationId) {
+        return new File(BASE_DIR, conversationId + INDEX_SUFFIX);
+    }
+
+    private File getLegacyFile(String conversationId) {
+        return new File(BASE_DIR, conversationId + LEGACY_SUFFIX);
     }
 
+    /**
+     * 列出目录下所有会话 id（包括日志格式和尚未迁移的旧版 .kryo 文件）
+     */
     public List<String> findKryoFiles(String directoryPath) {
-        List<String> kryoFiles = new ArrayList<>();
+        Set<String> conversationIds = new LinkedHashSet<>();
         File dir = new File(directoryPath);
 
         if (dir.exists() && dir.isDirectory()) {
-            // 获取所有.kryo文件
-            File[] files = dir.listFiles((d, name) -> name.toLowerCase().endsWith(".kryo"));
+            // 获取所有.log和.kryo文件
+            File[] files = dir.listFiles((d, name) -> {
+                String lowerName = name.toLowerCase();
+                return lowerName.endsWith(LOG_SUFFIX) || lowerName.endsWith(LEGACY_SUFFIX);
+            });
 
             if (files != null) {
                 for (File file : files) {
                     String fileName = file.getName();
-                    // 去除.kryo后缀
+                    // 去除后缀
                     String nameWithoutExt = fileName.substring(0, fileName.lastIndexOf('.'));
-                    kryoFiles.add(nameWithoutExt);
+                    conversationIds.add(nameWithoutExt);
                 }
             }
         } else {
             System.out.println("目录不存在或不是有效目录: " + directoryPath);
         }
 
-        return kryoFiles;
+        return new ArrayList<>(conversationIds);
     }
 }
@@ -0,0 +1,98 @@
+package com.springai.xilianai.chatmemory;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 窗口化的对话记忆：只把最近的一段历史交给模型，完整历史仍由 {@link CachedChatMemory} 保存
+ * <p>
+ * 窗口直接从存储尾部读取（最后 N 条，或在最后 N 条内按 token 预算从新到旧截取）。
+ * 开启滚动摘要时，摘要以一条系统消息的形式附在窗口前面，窗口从摘要覆盖的位置开始，摘要还没追上时窗口相应变长，
+ * 但不超过 {@link ConversationSummarizer#maxWindow()}。
+ */
+public class WindowedChatMemory implements ChatMemory {
+
+    private final CachedChatMemory store;
+    private final ChatMemoryProperties.Window window;
+    private final ConversationSummarizer summarizer;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    /**
+     * @param summarizer 为 null 时不做摘要
+     */
+    public WindowedChatMemory(CachedChatMemory store, ChatMemoryProperties.Window window,
+                              ConversationSummarizer summarizer) {
+        this.store = store;
+        this.window = window;
+        this.summarizer = summarizer;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        store.add(conversationId, messages);
+        if (summarizer != null) {
+            summarizer.maybeSummarize(conversationId);
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        if (summarizer == null || window.getStrategy() == ChatMemoryProperties.Strategy.FULL) {
+            return switch (window.getStrategy()) {
+                case FULL -> store.get(conversationId);
+                case LAST_N -> store.getLast(conversationId, window.getMaxMessages());
+                case TOKEN_BUDGET -> trimToBudget(store.getLast(conversationId, window.getMaxMessages()), 1);
+            };
+        }
+        ConversationSummarizer.Summary summary = summarizer.getSummary(conversationId);
+        long covered = summary == null ? 0 : summary.coveredCount();
+        // 摘要之后的消息全部留在窗口里：摘要在窗口满后攒够 triggerMessages 条才更新，
+        // 只取最后 N 条的话中间这段既不在摘要里也不在窗口里。摘要一直失败时窗口也不超过硬上限
+        int uncovered = (int) Math.min(summarizer.maxWindow(),
+                Math.max(0, store.size(conversationId) - covered));
+        List<Message> messages = store.getLast(conversationId, Math.max(window.getMaxMessages(), uncovered));
+        if (window.getStrategy() == ChatMemoryProperties.Strategy.TOKEN_BUDGET) {
+            messages = trimToBudget(messages, uncovered);
+        }
+        if (summary == null) {
+            return messages;
+        }
+        List<Message> result = new ArrayList<>(messages.size() + 1);
+        result.add(new SystemMessage("此前对话的摘要：" + summary.text()));
+        result.addAll(messages);
+        return result;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        store.clear(conversationId);
+        if (summarizer != null) {
+            summarizer.clear(conversationId);
+        }
+    }
+
+    /**
+     * 从最新的消息往前累加 token，超出预算即停止（至少保留最后 minKeep 条，且至少一条）
+     */
+    private List<Message> trimToBudget(List<Message> messages, int minKeep) {
+        int keep = Math.max(1, minKeep);
+        int used = 0;
+        int from = messages.size();
+        while (from > 0) {
+            String text = messages.get(from - 1).getText();
+            int tokens = text == null ? 0 : tokenCountEstimator.estimate(text);
+            if (used + tokens > window.getMaxTokens() && messages.size() - from >= keep) {
+                break;
+            }
+            used += tokens;
+            from--;
+        }
+        return new ArrayList<>(messages.subList(from, messages.size()));
+    }
+}
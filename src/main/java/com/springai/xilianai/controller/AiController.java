@@ -27,4 +27,19 @@ public class AiController {
 
         return client.collectFullResponse(message, chatId);
     }
+
+    /**
+     * 流式对话 + 语音：每生成一个完整句子就合成语音
+     * 事件依次为 TEXT_SEGMENT:句子、AUDIO_CHUNK:Base64 音频（可能多个）……，最后是 AUDIO_END
+     * <p>
+     * Base64 编码后体积增加约三分之一，支持 WebSocket 的客户端请使用二进制通道 /ws/chat/voice（见 {@link VoiceChatWebSocketHandler}），
+     * 这里作为兼容方式保留
+     */
+    @GetMapping(value = "/chat/voice/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> doChatVoiceStream(
+            @RequestParam String message,
+            @RequestParam(required = false, defaultValue = "default") String chatId) {
+
+        return client.chatWithVoice(message, chatId);
+    }
 }
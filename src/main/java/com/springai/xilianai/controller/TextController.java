@@ -1,6 +1,8 @@
 package com.springai.xilianai.controller;
 
-import com.springai.xilianai.chatmemory.FileBasedChatMemory;
+import com.springai.xilianai.chatmemory.CachedChatMemory;
+import com.springai.xilianai.chatmemory.ChatMemoryProperties;
+import jakarta.annotation.Resource;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -13,15 +15,19 @@ import java.util.List;
 @RequestMapping("/text")
 public class TextController {
 
+    @Resource
+    private CachedChatMemory chatMemory;
+
+    @Resource
+    private ChatMemoryProperties chatMemoryProperties;
+
     @GetMapping("/memory")
     public List<Message> gettext(@RequestParam(required = false, defaultValue = "default") String chatId) {
-        String fileDir = System.getProperty("user.dir") + "/tmp/chat-memory";
-        return new FileBasedChatMemory(fileDir).get(chatId);
+        return chatMemory.get(chatId);
     }
 
     @GetMapping("/filename")
     public List<String> gettextname(){
-        String fileDir = System.getProperty("user.dir") + "/tmp/chat-memory";
-        return new FileBasedChatMemory(fileDir).findKryoFiles(fileDir);
+        return chatMemory.getDelegate().findKryoFiles(chatMemoryProperties.getDir());
     }
 }
@@ -1,21 +1,38 @@
 package com.springai.xilianai.controller;
 
 
+import com.springai.xilianai.util.AudioArchive;
+import com.springai.xilianai.util.TtsAudioCache;
 import com.springai.xilianai.util.TtsBinaryService;
+import com.springai.xilianai.util.TtsGateway;
+import com.springai.xilianai.util.TtsOverloadedException;
 import jakarta.annotation.Resource;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/tts")
@@ -24,64 +41,132 @@ public class TtsController {
     
     @Resource
     private TtsBinaryService ttsBinaryService;
+
+    @Resource
+    private AudioArchive audioArchive;
+
+    @Resource
+    private TtsAudioCache ttsAudioCache;
+
+    @Resource
+    private TtsGateway ttsGateway;
     
+    /**
+     * 边合成边写出时最多预取的音频块数，每个请求占用的堆内存以此为上限
+     */
+    private static final int STREAM_WINDOW = 4;
+
     /**
      * 独立的TTS服务接口，返回二进制音频流
+     * <p>
+     * GPT-SoVITS 返回一块就写出一块（分块传输，不设 Content-Length），首字节时间取决于第一块音频而不是整段合成；
+     * 最多预取 {@link #STREAM_WINDOW} 块，客户端读得慢时通过背压暂停从上游读取，写出后的缓冲区立即释放。
      * 
-     * @param request 包含text和可选参数
+     * @param request 包含text和可选参数（音色名称、语速）
      * @return 二进制音频流
      */
     @PostMapping(value = "/synthesize", produces = "audio/wav")
     public StreamingResponseBody synthesizeAudioBatch(
             @RequestBody TtsRequest request,
             HttpServletResponse response) {
+        // 在设置音频响应头之前校验，空文本返回 400 而不是合成失败的 500
+        if (request.getText() == null || request.getText().isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "text 不能为空");
+        }
 
         response.setContentType("audio/wav");
         response.setHeader("Content-Disposition", "inline; filename=\"audio.wav\"");
 
-        return outputStream -> {
-            try {
-                log.info("开始批量TTS合成，文本长度: {}", request.getText().length());
-
-                // 收集所有音频数据
-                byte[] audioData = ttsBinaryService.synthesizeBinary(request.getText(),request.getChatId())
-                        .collectList()
-                        .map(dataBuffers -> {
-                            // 合并所有DataBuffer
-                            int totalSize = dataBuffers.stream()
-                                    .mapToInt(DataBuffer::readableByteCount)
-                                    .sum();
-
-                            ByteArrayOutputStream baos = new ByteArrayOutputStream(totalSize);
-                            for (DataBuffer buffer : dataBuffers) {
-                                byte[] bytes = new byte[buffer.readableByteCount()];
-                                buffer.read(bytes);
-                                baos.write(bytes, 0, bytes.length);
-                                DataBufferUtils.release(buffer);
-                            }
-                            return baos.toByteArray();
-                        })
-                        .block();  // 在非反应式环境中阻塞获取
+        log.info("开始流式TTS合成，文本长度: {}", request.getText().length());
+        Flux<DataBuffer> audio;
+        try {
+            audio = ttsBinaryService.synthesizeBinary(request.getText(), request.getChatId(),
+                    request.getVoiceModel(), request.getSpeed());
+        } catch (IllegalArgumentException e) {
+            // 未知的音色、语速超出范围
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        return streamAudio(audio);
+    }
 
-                // 写入响应
-                outputStream.write(audioData);
-                outputStream.flush();
+    /**
+     * 按合成缓存 key 取回音频（TtsTool 返回的音频地址），正在合成时边合成边返回；
+     * 音频已被淘汰时按地址记住的请求重新合成（用户正在等着听，交互优先级）
+     */
+    @GetMapping(value = "/audio/{key:[0-9a-f]+}", produces = "audio/wav")
+    public ResponseEntity<StreamingResponseBody> cachedAudio(@PathVariable String key) {
+        Flux<DataBuffer> audio = ttsAudioCache.findOrSynthesize(key,
+                request -> ttsGateway.synthesize(request, TtsGateway.Priority.INTERACTIVE));
+        if (audio == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("audio/wav"))
+                .body(streamAudio(audio));
+    }
 
-                log.info("批量TTS合成完成，音频大小: {} bytes", audioData.length);
+    /**
+     * 边收边写：最多预取 {@link #STREAM_WINDOW} 块，写出后立即释放；客户端断开时取消上游
+     */
+    private StreamingResponseBody streamAudio(Flux<DataBuffer> source) {
+        // 提前结束（客户端断开）时，已预取但没写出的块也要释放
+        Flux<DataBuffer> audio = source.doOnDiscard(DataBuffer.class, DataBufferUtils::release);
 
+        return outputStream -> {
+            long written = 0;
+            WritableByteChannel channel = Channels.newChannel(outputStream);
+            // 关闭 Stream 时取消上游订阅
+            try (Stream<DataBuffer> buffers = audio.toStream(STREAM_WINDOW)) {
+                Iterator<DataBuffer> iterator = buffers.iterator();
+                while (iterator.hasNext()) {
+                    DataBuffer buffer = iterator.next();
+                    try (DataBuffer.ByteBufferIterator byteBuffers = buffer.readableByteBuffers()) {
+                        while (byteBuffers.hasNext()) {
+                            ByteBuffer byteBuffer = byteBuffers.next();
+                            written += byteBuffer.remaining();
+                            while (byteBuffer.hasRemaining()) {
+                                channel.write(byteBuffer);
+                            }
+                        }
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                    outputStream.flush();
+                }
+                log.info("流式TTS输出完成，音频大小: {} bytes", written);
+            } catch (IOException e) {
+                log.warn("客户端提前断开，已写出 {} bytes: {}", written, e.getMessage());
+                throw e;
+            } catch (TtsOverloadedException e) {
+                // 原样抛出，还没写出数据时返回 503
+                throw e;
             } catch (Exception e) {
-                log.error("批量TTS合成失败", e);
+                log.error("流式TTS合成失败", e);
                 throw new RuntimeException("音频生成失败", e);
-            } finally {
-                try {
-                    outputStream.close();
-                } catch (IOException e) {
-                    log.error("关闭输出流失败", e);
-                }
             }
         };
     }
     
+    /**
+     * 会话的音频归档列表（文件名、原文、大小、时间）
+     */
+    @GetMapping("/archive/{chatId}")
+    public List<AudioArchive.Entry> listArchive(@PathVariable String chatId) {
+        return audioArchive.list(chatId);
+    }
+
+    /**
+     * 回放归档中的音频，不重新合成
+     */
+    @GetMapping(value = "/archive/{chatId}/{file}", produces = "audio/wav")
+    public ResponseEntity<FileSystemResource> replayArchive(@PathVariable String chatId, @PathVariable String file) {
+        return audioArchive.find(chatId, file)
+                .<ResponseEntity<FileSystemResource>>map(path -> ResponseEntity.ok()
+                        .contentType(MediaType.parseMediaType("audio/wav"))
+                        .body(new FileSystemResource(path)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     /**
      * TTS请求参数类
      */
@@ -89,7 +174,7 @@ public class TtsController {
     public static class TtsRequest {
         private String text;
         private String chatId;
-        private String voiceModel = "default"; // 可选的语音模型
-        private Double speed = 1.0; // 语速
+        private String voiceModel; // 音色名称（xilian.tts.voices），为空时使用默认音色
+        private Double speed; // 语速，为空时使用音色的默认语速
     }
 }
\ No newline at end of file
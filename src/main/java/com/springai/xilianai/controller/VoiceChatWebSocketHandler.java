@@ -0,0 +1,216 @@
+package com.springai.xilianai.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springai.xilianai.util.VoiceEvent;
+import com.springai.xilianai.xlai.Client;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 语音对话的二进制通道（/ws/chat/voice），替代 Base64 编码的 SSE
+ * <p>
+ * 客户端发送文本帧 {@code {"message": "...", "chatId": "..."}}，服务端依次返回：
+ * <ul>
+ *     <li>文本帧 {@code {"type":"text","sentence":0,"text":"..."}}：一个句子的文本</li>
+ *     <li>二进制帧：8 字节大端头（4 字节帧序号，从 0 递增；4 字节句子序号），后面是该句的一段 wav 音频，
+ *     每句第一段带 wav 文件头</li>
+ *     <li>文本帧 {@code {"type":"error","sentence":0,"text":"..."}}：该句合成失败</li>
+ *     <li>文本帧 {@code {"type":"end"}}：本轮回答结束</li>
+ * </ul>
+ * 音频直接转发 GPT-SoVITS 返回的缓冲区，不复制、不编码：帧头作为第一个分片，音频作为后续分片发送。
+ * 同一连接上发起新的提问会取消上一轮还没结束的回答。
+ */
+@Slf4j
+@Component
+public class VoiceChatWebSocketHandler extends AbstractWebSocketHandler {
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    private static final String CHANNEL_ATTRIBUTE = "voiceChannel";
+
+    /**
+     * 发送是阻塞调用，在弹性线程上执行；最多预取这么多事件，客户端读得慢时背压到合成端
+     */
+    private static final int SEND_PREFETCH = 8;
+
+    private final Client client;
+    private final ObjectMapper objectMapper;
+
+    public VoiceChatWebSocketHandler(Client client, ObjectMapper objectMapper) {
+        this.client = client;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        session.getAttributes().put(CHANNEL_ATTRIBUTE, new VoiceChannel(session));
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        VoiceChannel channel = channel(session);
+        VoiceChatRequest request = objectMapper.readValue(message.getPayload(), VoiceChatRequest.class);
+        if (request.getMessage() == null || request.getMessage().isBlank()) {
+            channel.sendError(channel.generation(), -1, "message 不能为空");
+            return;
+        }
+        String chatId = request.getChatId() == null ? "default" : request.getChatId();
+        // 取消上一轮，并等它正在发送的那一帧发完
+        int generation = channel.restart();
+
+        AtomicInteger frameSeq = new AtomicInteger();
+        Disposable stream = client.chatWithVoiceEvents(request.getMessage(), chatId)
+                .publishOn(Schedulers.boundedElastic(), SEND_PREFETCH)
+                .doOnDiscard(VoiceEvent.class, VoiceEvent::release)
+                .subscribe(
+                        event -> channel.send(generation, event, frameSeq),
+                        error -> {
+                            log.error("语音对话异常，chatId: {}", chatId, error);
+                            channel.sendError(generation, -1, String.valueOf(error.getMessage()));
+                        });
+        channel.attach(generation, stream);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        channel(session).close();
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.warn("语音对话连接异常: {}", exception.getMessage());
+        channel(session).close();
+    }
+
+    private VoiceChannel channel(WebSocketSession session) {
+        return (VoiceChannel) session.getAttributes()
+                .computeIfAbsent(CHANNEL_ATTRIBUTE, key -> new VoiceChannel(session));
+    }
+
+    /**
+     * 一个连接的发送端：{@link WebSocketSession} 不是线程安全的，所有发送都在这里串行执行，
+     * 一个音频消息的帧头和各个分片之间不会插入别的消息。
+     * <p>
+     * 每轮回答有一个代数，开始新一轮时代数加一并取消上一轮；上一轮已经在发送的事件会先发完（新一轮的发送在锁上等待），
+     * 之后才到达的旧事件直接丢弃，不会和新一轮的消息交错。
+     */
+    private final class VoiceChannel {
+
+        private final WebSocketSession session;
+        private int generation;
+        private Disposable stream;
+
+        VoiceChannel(WebSocketSession session) {
+            this.session = session;
+        }
+
+        synchronized int generation() {
+            return generation;
+        }
+
+        /**
+         * 取消当前一轮，返回新一轮的代数
+         */
+        synchronized int restart() {
+            dispose();
+            return ++generation;
+        }
+
+        synchronized void attach(int generation, Disposable stream) {
+            if (generation == this.generation) {
+                this.stream = stream;
+            } else {
+                // 订阅期间又开始了新一轮
+                stream.dispose();
+            }
+        }
+
+        synchronized void close() {
+            generation++;
+            dispose();
+        }
+
+        synchronized void send(int generation, VoiceEvent event, AtomicInteger frameSeq) {
+            try {
+                if (generation != this.generation) {
+                    return;
+                }
+                if (!session.isOpen()) {
+                    close();
+                    return;
+                }
+                switch (event.type()) {
+                    case TEXT -> sendJson(Map.of("type", "text", "sentence", event.sentence(), "text", event.text()));
+                    case AUDIO -> sendAudio(frameSeq.getAndIncrement(), event.sentence(), event.audio());
+                    case ERROR -> sendJson(Map.of("type", "error", "sentence", event.sentence(),
+                            "text", event.text()));
+                    case END -> sendJson(Map.of("type", "end"));
+                }
+            } catch (IOException e) {
+                log.warn("发送语音帧失败，取消本轮回答: {}", e.getMessage());
+                close();
+            } finally {
+                event.release();
+            }
+        }
+
+        synchronized void sendError(int generation, int sentence, String text) {
+            if (generation != this.generation || !session.isOpen()) {
+                return;
+            }
+            try {
+                sendJson(Map.of("type", "error", "sentence", sentence, "text", text));
+            } catch (IOException e) {
+                log.debug("发送错误帧失败: {}", e.getMessage());
+            }
+        }
+
+        /**
+         * 帧头作为第一个分片，音频缓冲区原样作为后续分片，拼成一个二进制消息
+         */
+        private void sendAudio(int seq, int sentence, DataBuffer audio) throws IOException {
+            if (audio.readableByteCount() == 0) {
+                return;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(seq).putInt(sentence).flip();
+            session.sendMessage(new BinaryMessage(header, false));
+            try (DataBuffer.ByteBufferIterator buffers = audio.readableByteBuffers()) {
+                while (buffers.hasNext()) {
+                    ByteBuffer payload = buffers.next();
+                    session.sendMessage(new BinaryMessage(payload, !buffers.hasNext()));
+                }
+            }
+        }
+
+        private void sendJson(Map<String, Object> payload) throws IOException {
+            session.sendMessage(new TextMessage(objectMapper.writeValueAsString(payload)));
+        }
+
+        private void dispose() {
+            if (stream != null) {
+                stream.dispose();
+                stream = null;
+            }
+        }
+    }
+
+    @Data
+    public static class VoiceChatRequest {
+        private String message;
+        private String chatId;
+    }
+}
@@ -0,0 +1,230 @@
+package com.springai.xilianai.rag;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * 进程内 BM25 倒排索引
+ * <p>
+ * 索引切片正文和 {@link KeywordEnricher} 生成的关键词（关键词词频加权），分词见 {@link CjkTokenizer}。
+ * 文档编号按加入顺序分配，删除和重复加入同一 ID 只做标记，不重排倒排表。
+ */
+class Bm25Index {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    /**
+     * 关键词中的词按出现这么多次计入词频
+     */
+    private static final int KEYWORD_BOOST = 2;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Document> documents = new ArrayList<>();
+    private int[] lengths = new int[64];
+    private final BitSet deleted = new BitSet();
+    private final Map<String, Integer> docById = new HashMap<>();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private long totalLength;
+
+    void add(List<Document> documentsToAdd) {
+        lock.writeLock().lock();
+        try {
+            for (Document document : documentsToAdd) {
+                Integer previous = docById.get(document.getId());
+                if (previous != null) {
+                    markDeleted(previous);
+                }
+                int doc = documents.size();
+                documents.add(document);
+                docById.put(document.getId(), doc);
+
+                Map<String, Integer> frequencies = termFrequencies(document);
+                int length = 0;
+                for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                    postings.computeIfAbsent(entry.getKey(), key -> new Postings()).add(doc, entry.getValue());
+                    length += entry.getValue();
+                }
+                if (doc == lengths.length) {
+                    lengths = Arrays.copyOf(lengths, lengths.length * 2);
+                }
+                lengths[doc] = length;
+                totalLength += length;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void delete(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer doc = docById.remove(id);
+                if (doc != null) {
+                    markDeleted(doc);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按 BM25 分数从高到低返回最多 topK 个文档
+     *
+     * @param accept 文档过滤条件，为 null 时不过滤
+     */
+    List<Hit> search(String query, int topK, Predicate<Document> accept) {
+        lock.readLock().lock();
+        try {
+            int liveCount = docById.size();
+            if (liveCount == 0 || topK <= 0) {
+                return List.of();
+            }
+            float averageLength = (float) totalLength / liveCount;
+            float[] scores = new float[documents.size()];
+            BitSet touched = new BitSet();
+            for (String term : new LinkedHashSet<>(CjkTokenizer.tokenize(query))) {
+                Postings termPostings = postings.get(term);
+                if (termPostings == null) {
+                    continue;
+                }
+                int documentFrequency = termPostings.liveCount;
+                double idf = Math.log(1 + (liveCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+                for (int i = 0; i < termPostings.size; i++) {
+                    int doc = termPostings.docs[i];
+                    if (deleted.get(doc)) {
+                        continue;
+                    }
+                    int frequency = termPostings.frequencies[i];
+                    float norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+                    scores[doc] += (float) (idf * frequency * (K1 + 1) / (frequency + norm));
+                    touched.set(doc);
+                }
+            }
+
+            HnswIndex.NodeHeap heap = new HnswIndex.NodeHeap(topK + 1, true);
+            for (int doc = touched.nextSetBit(0); doc >= 0; doc = touched.nextSetBit(doc + 1)) {
+                if (accept != null && !accept.test(documents.get(doc))) {
+                    continue;
+                }
+                heap.push(doc, scores[doc]);
+                if (heap.size() > topK) {
+                    heap.pop();
+                }
+            }
+            int[] docs = heap.drainDescending();
+            float[] topScores = heap.lastScores();
+            List<Hit> hits = new ArrayList<>(docs.length);
+            for (int i = 0; i < docs.length; i++) {
+                hits.add(new Hit(documents.get(docs[i]), topScores[i]));
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 当前（未删除的）文档，用于持久化
+     */
+    List<Document> documents() {
+        lock.readLock().lock();
+        try {
+            List<Document> live = new ArrayList<>(docById.size());
+            for (int doc = 0; doc < documents.size(); doc++) {
+                if (!deleted.get(doc)) {
+                    live.add(documents.get(doc));
+                }
+            }
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            documents.clear();
+            deleted.clear();
+            docById.clear();
+            postings.clear();
+            totalLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 调用方已持有写锁
+     */
+    private void markDeleted(int doc) {
+        if (deleted.get(doc)) {
+            return;
+        }
+        deleted.set(doc);
+        totalLength -= lengths[doc];
+        for (String term : termFrequencies(documents.get(doc)).keySet()) {
+            Postings termPostings = postings.get(term);
+            if (termPostings != null) {
+                termPostings.liveCount--;
+            }
+        }
+    }
+
+    /**
+     * 正文和关键词合并后的词频
+     */
+    private static Map<String, Integer> termFrequencies(Document document) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : CjkTokenizer.tokenize(document.getText())) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        Object keywords = document.getMetadata().get(KeywordEnricher.KEYWORDS_METADATA_KEY);
+        if (keywords != null) {
+            for (String token : CjkTokenizer.tokenize(keywords.toString())) {
+                frequencies.merge(token, KEYWORD_BOOST, Integer::sum);
+            }
+        }
+        return frequencies;
+    }
+
+    record Hit(Document document, float score) {
+    }
+
+    /**
+     * 一个词的倒排表：文档编号和词频
+     */
+    private static class Postings {
+        private int[] docs = new int[4];
+        private int[] frequencies = new int[4];
+        private int size;
+        /**
+         * 未删除的文档数（即文档频率）
+         */
+        private int liveCount;
+
+        void add(int doc, int frequency) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docs[size] = doc;
+            frequencies[size] = frequency;
+            size++;
+            liveCount++;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.springai.xilianai.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 先查 {@link EmbeddingCache} 的向量模型包装
+ * <p>
+ * 命中缓存的文本不再调用远程模型，未命中的文本合并成一次请求交给真实模型。
+ * 建索引和检索各用一个实例：只有建索引用的实例（{@code recordMisses} 为 true）才把新向量写入缓存，
+ * 检索用的实例未命中的文本是用户问题，交给内存中的 {@link QueryEmbeddingCache}，不会污染磁盘缓存。
+ * 两者是否写缓存在创建时确定，建索引期间用户提问也不会写入磁盘缓存。
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCache cache;
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final boolean recordMisses;
+
+    /**
+     * @param recordMisses 为 true 时（建索引）未命中的文本调用真实模型并写入缓存，否则按用户问题处理
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, EmbeddingCache cache,
+                                 QueryEmbeddingCache queryEmbeddingCache, boolean recordMisses) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.recordMisses = recordMisses;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        float[][] vectors = new float[texts.size()][];
+        List<String> missTexts = new ArrayList<>();
+        List<Integer> missPositions = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            vectors[i] = cache.getEmbedding(texts.get(i));
+            if (vectors[i] == null) {
+                missTexts.add(texts.get(i));
+                missPositions.add(i);
+            }
+        }
+
+        if (!missTexts.isEmpty() && !recordMisses) {
+            for (int i = 0; i < missTexts.size(); i++) {
+                vectors[missPositions.get(i)] = queryEmbeddingCache.embed(missTexts.get(i));
+            }
+        } else if (!missTexts.isEmpty()) {
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(missTexts, request.getOptions()));
+            List<Embedding> results = response.getResults();
+            for (int i = 0; i < results.size(); i++) {
+                Embedding result = results.get(i);
+                int missIndex = result.getIndex() != null ? result.getIndex() : i;
+                vectors[missPositions.get(missIndex)] = result.getOutput();
+                cache.putEmbedding(missTexts.get(missIndex), result.getOutput());
+            }
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        int cached = cache.dimensions();
+        return cached > 0 ? cached : delegate.dimensions();
+    }
+}
@@ -0,0 +1,60 @@
+package com.springai.xilianai.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+
+/**
+ * 带缓存的检索：先通过 {@link QueryEmbeddingCache} 取得问题向量，再查 {@link RetrievalResultCache}，
+ * 都未命中时才交给真实向量库检索（真实向量库向量化问题时同样命中问题向量缓存，不会重复调用远程模型）。
+ * 写入和删除直接交给真实向量库。
+ */
+public class CachingRetrievalVectorStore implements VectorStore {
+
+    private final VectorStore delegate;
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final RetrievalResultCache retrievalResultCache;
+
+    public CachingRetrievalVectorStore(VectorStore delegate, QueryEmbeddingCache queryEmbeddingCache,
+                                       RetrievalResultCache retrievalResultCache) {
+        this.delegate = delegate;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.retrievalResultCache = retrievalResultCache;
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] embedding = Vectors.normalize(queryEmbeddingCache.embed(request.getQuery()));
+        List<Document> cached = retrievalResultCache.get(embedding, request);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = retrievalResultCache.generation();
+        List<Document> documents = delegate.similaritySearch(request);
+        retrievalResultCache.put(embedding, request, documents, generation);
+        return documents;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+}
@@ -0,0 +1,76 @@
+package com.springai.xilianai.rag;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 面向中文设定文档的分词：不依赖词典
+ * <p>
+ * 连续的汉字（及假名）切成单字和相邻两字（bigram），人名、地名等专有名词可以由 bigram 精确匹配；
+ * 连续的字母数字作为一个词（转小写），字母和数字混排时（如 Philia093）再分别输出字母部分和数字部分，
+ * 这样只搜索“093”也能命中。其余字符（标点、空白、符号）作为分隔。
+ */
+final class CjkTokenizer {
+
+    private CjkTokenizer() {
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int codePoint = text.codePointAt(i);
+            if (isCjk(codePoint)) {
+                int start = i;
+                while (i < length && isCjk(text.codePointAt(i))) {
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                emitCjk(text.substring(start, i), tokens);
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                int start = i;
+                while (i < length && !isCjk(text.codePointAt(i)) && Character.isLetterOrDigit(text.codePointAt(i))) {
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                emitAlphanumeric(text.substring(start, i).toLowerCase(), tokens);
+            } else {
+                i += Character.charCount(codePoint);
+            }
+        }
+        return tokens;
+    }
+
+    private static void emitCjk(String run, List<String> tokens) {
+        int[] codePoints = run.codePoints().toArray();
+        for (int j = 0; j < codePoints.length; j++) {
+            tokens.add(new String(codePoints, j, 1));
+            if (j + 1 < codePoints.length) {
+                tokens.add(new String(codePoints, j, 2));
+            }
+        }
+    }
+
+    private static void emitAlphanumeric(String run, List<String> tokens) {
+        tokens.add(run);
+        int start = 0;
+        for (int j = 1; j < run.length(); j++) {
+            if (Character.isDigit(run.charAt(j)) != Character.isDigit(run.charAt(j - 1))) {
+                tokens.add(run.substring(start, j));
+                start = j;
+            }
+        }
+        if (start > 0) {
+            tokens.add(run.substring(start));
+        }
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA;
+    }
+}
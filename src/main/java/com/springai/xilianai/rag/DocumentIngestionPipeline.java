@@ -0,0 +1,213 @@
+package com.springai.xilianai.rag;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 文档入库流水线：并发地做关键词增强和向量化
+ * <p>
+ * 每个远程调用跑在独立的虚拟线程上，由信号量限制同时进行的调用数，由令牌桶限制每分钟发送的 token 数；
+ * 失败的调用按指数退避重试。结果按输入顺序返回，保证每次建出的索引一致。
+ */
+@Component
+@Slf4j
+public class DocumentIngestionPipeline {
+
+    /**
+     * 关键词提取提示词本身的 token 开销（估算）
+     */
+    private static final int ENRICH_PROMPT_OVERHEAD_TOKENS = 150;
+
+    private final KeywordEnricher keywordEnricher;
+    private final EmbeddingCache embeddingCache;
+    private final RagProperties.Ingestion properties;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final TokenBucket tokenBucket;
+
+    private final Counter enrichedCounter;
+    private final Counter embeddedCounter;
+    private final Counter retryCounter;
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+
+    public DocumentIngestionPipeline(KeywordEnricher keywordEnricher, EmbeddingCache embeddingCache,
+                                     RagProperties ragProperties, MeterRegistry meterRegistry) {
+        this.keywordEnricher = keywordEnricher;
+        this.embeddingCache = embeddingCache;
+        this.properties = ragProperties.getIngestion();
+        this.tokenBucket = new TokenBucket(properties.getTokensPerMinute());
+        this.enrichedCounter = meterRegistry.counter("xilian.rag.ingestion.documents", "stage", "enrich");
+        this.embeddedCounter = meterRegistry.counter("xilian.rag.ingestion.documents", "stage", "embed");
+        this.retryCounter = meterRegistry.counter("xilian.rag.ingestion.retries");
+        meterRegistry.gauge("xilian.rag.ingestion.pending", pendingTasks);
+    }
+
+    /**
+     * 补充关键词并预先计算向量（写入 {@link EmbeddingCache}），返回与输入顺序一致的文档列表
+     *
+     * @param embeddingModel 建索引用的向量模型（未命中时写入缓存的实例）
+     */
+    public List<Document> ingest(List<Document> documents, EmbeddingModel embeddingModel) {
+        long start = System.currentTimeMillis();
+        List<Document> enriched = enrich(documents);
+        embed(enriched, embeddingModel);
+        log.info("文档入库流水线完成，文档数: {}，耗时: {} ms", documents.size(), System.currentTimeMillis() - start);
+        return enriched;
+    }
+
+    private List<Document> enrich(List<Document> documents) {
+        List<Callable<Document>> tasks = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            tasks.add(() -> {
+                if (embeddingCache.getKeywords(document.getText()) == null) {
+                    tokenBucket.acquire(estimateTokens(document.getText()) + ENRICH_PROMPT_OVERHEAD_TOKENS);
+                }
+                Document result = keywordEnricher.enrichDocument(document);
+                enrichedCounter.increment();
+                return result;
+            });
+        }
+        return runAll("关键词增强", tasks);
+    }
+
+    private void embed(List<Document> documents, EmbeddingModel embeddingModel) {
+        int batchSize = Math.max(1, properties.getEmbeddingBatchSize());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < documents.size(); from += batchSize) {
+            List<String> texts = new ArrayList<>();
+            for (Document document : documents.subList(from, Math.min(from + batchSize, documents.size()))) {
+                // 已缓存的文本不占用限流额度
+                if (embeddingCache.getEmbedding(document.getText()) == null) {
+                    texts.add(document.getText());
+                }
+            }
+            if (texts.isEmpty()) {
+                continue;
+            }
+            tasks.add(() -> {
+                tokenBucket.acquire(texts.stream().mapToInt(this::estimateTokens).sum());
+                embeddingModel.embed(texts);
+                embeddedCounter.increment(texts.size());
+                return null;
+            });
+        }
+        runAll("向量化", tasks);
+    }
+
+    /**
+     * 在虚拟线程上并发执行任务（受并发数限制并带重试），按提交顺序收集结果
+     */
+    private <T> List<T> runAll(String stage, List<Callable<T>> tasks) {
+        if (tasks.isEmpty()) {
+            return List.of();
+        }
+        Semaphore permits = new Semaphore(Math.max(1, properties.getConcurrency()));
+        AtomicInteger completed = new AtomicInteger();
+        int total = tasks.size();
+        int progressStep = Math.max(1, total / 10);
+        pendingTasks.addAndGet(total);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<T>> futures = new ArrayList<>(total);
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return withRetry(stage, task);
+                    } finally {
+                        permits.release();
+                        pendingTasks.decrementAndGet();
+                        int done = completed.incrementAndGet();
+                        if (done % progressStep == 0 || done == total) {
+                            log.info("{}进度: {}/{}", stage, done, total);
+                        }
+                    }
+                }));
+            }
+            List<T> results = new ArrayList<>(total);
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(stage + "失败", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(stage + "被中断", e);
+        }
+    }
+
+    private <T> T withRetry(String stage, Callable<T> task) throws Exception {
+        long backoffMillis = properties.getInitialBackoff().toMillis();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                if (attempt >= properties.getMaxRetries()) {
+                    throw e;
+                }
+                retryCounter.increment();
+                long sleep = backoffMillis + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+                log.warn("{}调用失败，{} ms 后第 {} 次重试: {}", stage, sleep, attempt + 1, e.getMessage());
+                Thread.sleep(sleep);
+                backoffMillis *= 2;
+            }
+        }
+    }
+
+    private int estimateTokens(String text) {
+        return text == null ? 0 : tokenCountEstimator.estimate(text);
+    }
+
+    /**
+     * 简单令牌桶：按每分钟额度匀速补充，额度不足时阻塞等待（调用方运行在虚拟线程上）
+     */
+    static class TokenBucket {
+        private final double capacity;
+        private final double refillPerNano;
+        private double available;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(int tokensPerMinute) {
+            this.capacity = Math.max(1, tokensPerMinute);
+            this.refillPerNano = capacity / Duration.ofMinutes(1).toNanos();
+            this.available = capacity;
+        }
+
+        void acquire(int tokens) throws InterruptedException {
+            // 单次请求超过桶容量时按容量计，避免永远等不到
+            double needed = Math.min(tokens, capacity);
+            while (true) {
+                long waitNanos;
+                synchronized (this) {
+                    long now = System.nanoTime();
+                    available = Math.min(capacity, available + (now - lastRefill) * refillPerNano);
+                    lastRefill = now;
+                    if (available >= needed) {
+                        available -= needed;
+                        return;
+                    }
+                    waitNanos = (long) ((needed - available) / refillPerNano);
+                }
+                Thread.sleep(Duration.ofNanos(Math.max(waitNanos, 1_000_000)));
+            }
+        }
+    }
+}
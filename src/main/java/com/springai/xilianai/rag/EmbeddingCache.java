@@ -0,0 +1,185 @@
+package com.springai.xilianai.rag;
+
+import cn.hutool.crypto.SecureUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按内容哈希保存的向量和关键词磁盘缓存
+ * <p>
+ * 键是文本的 SHA-256，内容不变的文档切片在重启后可以直接复用之前的向量和关键词，
+ * 只有新增或修改过的切片才需要调用远程模型。
+ */
+@Component
+@Slf4j
+public class EmbeddingCache {
+
+    private static final String EMBEDDINGS_FILE = "embeddings.bin";
+    private static final String KEYWORDS_FILE = "keywords.bin";
+
+    private final Path cacheDir;
+    private final Map<String, float[]> embeddings = new ConcurrentHashMap<>();
+    private final Map<String, String> keywords = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    public EmbeddingCache(RagProperties ragProperties) {
+        this.cacheDir = Paths.get(ragProperties.getCacheDir());
+    }
+
+    @PostConstruct
+    public void load() {
+        try {
+            Files.createDirectories(cacheDir);
+            loadEmbeddings(cacheDir.resolve(EMBEDDINGS_FILE));
+            loadKeywords(cacheDir.resolve(KEYWORDS_FILE));
+            log.info("向量缓存加载完成，向量: {} 条，关键词: {} 条", embeddings.size(), keywords.size());
+        } catch (IOException e) {
+            log.error("向量缓存加载失败，将重新生成", e);
+            embeddings.clear();
+            keywords.clear();
+        }
+    }
+
+    public static String hash(String text) {
+        return SecureUtil.sha256(text == null ? "" : text);
+    }
+
+    /**
+     * 语料指纹：所有切片的文本和来源文件名的哈希，语料不变则指纹不变
+     */
+    public static String fingerprint(List<Document> documents) {
+        StringBuilder builder = new StringBuilder();
+        for (Document document : documents) {
+            builder.append(hash(document.getText()))
+                    .append(':')
+                    .append(document.getMetadata().get("filename"))
+                    .append('\n');
+        }
+        return hash(builder.toString());
+    }
+
+    public float[] getEmbedding(String text) {
+        return embeddings.get(hash(text));
+    }
+
+    public void putEmbedding(String text, float[] embedding) {
+        embeddings.put(hash(text), embedding);
+        dirty = true;
+    }
+
+    public String getKeywords(String text) {
+        return keywords.get(hash(text));
+    }
+
+    public void putKeywords(String text, String value) {
+        keywords.put(hash(text), value);
+        dirty = true;
+    }
+
+    /**
+     * 任取一条缓存向量的维度，缓存为空时返回 -1
+     */
+    public int dimensions() {
+        return embeddings.values().stream().findAny().map(vector -> vector.length).orElse(-1);
+    }
+
+    /**
+     * 有新增内容时写回磁盘（先写临时文件再替换）
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            Files.createDirectories(cacheDir);
+            saveEmbeddings(cacheDir.resolve(EMBEDDINGS_FILE));
+            saveKeywords(cacheDir.resolve(KEYWORDS_FILE));
+            dirty = false;
+            log.info("向量缓存已保存，向量: {} 条，关键词: {} 条", embeddings.size(), keywords.size());
+        } catch (IOException e) {
+            log.error("向量缓存保存失败", e);
+        }
+    }
+
+    private void loadEmbeddings(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                float[] vector = new float[in.readInt()];
+                for (int j = 0; j < vector.length; j++) {
+                    vector[j] = in.readFloat();
+                }
+                embeddings.put(key, vector);
+            }
+        }
+    }
+
+    private void loadKeywords(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                keywords.put(in.readUTF(), in.readUTF());
+            }
+        }
+    }
+
+    private void saveEmbeddings(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            Map<String, float[]> snapshot = Map.copyOf(embeddings);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, float[]> entry : snapshot.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                for (float value : entry.getValue()) {
+                    out.writeFloat(value);
+                }
+            }
+        }
+        replace(tmp, file);
+    }
+
+    private void saveKeywords(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            Map<String, String> snapshot = Map.copyOf(keywords);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, String> entry : snapshot.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        }
+        replace(tmp, file);
+    }
+
+    private static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.springai.xilianai.rag;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 堆内向量存储：所有向量连续放在一个可扩容的 float 数组里，避免每条向量一个对象
+ */
+class HeapVectorStorage implements VectorStorage {
+
+    private final int dimensions;
+    private float[] data;
+    private int size;
+
+    HeapVectorStorage(int dimensions) {
+        this.dimensions = dimensions;
+        this.data = new float[dimensions * 16];
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int add(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("向量维度不匹配: " + vector.length + " != " + dimensions);
+        }
+        if ((size + 1) * dimensions > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        System.arraycopy(vector, 0, data, size * dimensions, dimensions);
+        return size++;
+    }
+
+    @Override
+    public float similarity(float[] query, int node) {
+        int offset = node * dimensions;
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            sum += query[i] * data[offset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float similarity(int a, int b) {
+        int offsetA = a * dimensions;
+        int offsetB = b * dimensions;
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            sum += data[offsetA + i] * data[offsetB + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public long heapBytes() {
+        return (long) data.length * Float.BYTES;
+    }
+
+    @Override
+    public long offHeapBytes() {
+        return 0;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        ByteBuffer row = ByteBuffer.allocate(dimensions * Float.BYTES);
+        for (int node = 0; node < size; node++) {
+            row.clear();
+            row.asFloatBuffer().put(data, node * dimensions, dimensions);
+            out.write(row.array());
+        }
+    }
+}
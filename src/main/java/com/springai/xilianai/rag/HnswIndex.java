@@ -0,0 +1,436 @@
+package com.springai.xilianai.rag;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntPredicate;
+
+/**
+ * HNSW（分层可导航小世界图）近似最近邻索引
+ * <p>
+ * 节点编号与 {@link VectorStorage} 中的向量编号一致；每个节点在每一层保存一组邻居编号（int 数组，首元素为邻居数）。
+ * 本类不是线程安全的，由 {@link HnswVectorStore} 用读写锁保护：插入持有写锁，查询持有读锁。
+ */
+class HnswIndex {
+
+    private final VectorStorage vectors;
+    private final int m;
+    private final int maxNeighborsLevel0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    /**
+     * links.get(node)[level] = {邻居数, 邻居1, 邻居2, ...}
+     */
+    private final List<int[][]> links = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /**
+     * 查询间复用的访问标记，每次查询取出一个、用完归还，避免每次查询分配 visited 集合。
+     * 不用 ThreadLocal：启用虚拟线程后每个请求都是新线程，ThreadLocal 等于每次查询重新分配；
+     * 池中的数量以同时进行的查询数为上限
+     */
+    private final Queue<VisitedMarks> visitedMarksPool = new ConcurrentLinkedQueue<>();
+
+    HnswIndex(VectorStorage vectors, int m, int efConstruction) {
+        this.vectors = vectors;
+        this.m = m;
+        this.maxNeighborsLevel0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    VectorStorage vectors() {
+        return vectors;
+    }
+
+    int size() {
+        return links.size();
+    }
+
+    void markDeleted(int node) {
+        deleted.set(node);
+    }
+
+    boolean isDeleted(int node) {
+        return deleted.get(node);
+    }
+
+    /**
+     * 插入一条已归一化的向量，返回节点编号
+     */
+    int insert(float[] vector) {
+        int node = vectors.add(vector);
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[maxNeighbors(l) + 1];
+        }
+        links.add(nodeLinks);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vector, current, l, true);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NodeHeap candidates = searchLayer(vector, current, efConstruction, l, null, true);
+            int[] neighbors = selectNeighbors(candidates.drainDescending(), candidates.lastScores(), maxNeighbors(l));
+            for (int neighbor : neighbors) {
+                connect(node, neighbor, l);
+                connect(neighbor, node, l);
+            }
+            if (neighbors.length > 0) {
+                current = neighbors[0];
+            }
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    /**
+     * 近似最近邻查询，返回按相似度从高到低排列的节点编号和分数
+     *
+     * @param accept 节点过滤条件（已删除节点总是被过滤），为 null 时不过滤
+     */
+    SearchResult search(float[] query, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0 || k <= 0) {
+            return new SearchResult(new int[0], new float[0]);
+        }
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(query, current, l, false);
+        }
+        IntPredicate filter = accept == null ? node -> !deleted.get(node) : node -> !deleted.get(node) && accept.test(node);
+        NodeHeap results = searchLayer(query, current, Math.max(ef, k), 0, filter, false);
+        while (results.size() > k) {
+            results.pop();
+        }
+        int[] nodes = results.drainDescending();
+        return new SearchResult(nodes, results.lastScores());
+    }
+
+    private int maxNeighbors(int level) {
+        return level == 0 ? maxNeighborsLevel0 : m;
+    }
+
+    /**
+     * 建图时用原始向量打分保证图的质量，查询时用（可能量化过的）近似分数
+     */
+    private float score(float[] query, int node, boolean exact) {
+        return exact ? vectors.exactSimilarity(query, node) : vectors.similarity(query, node);
+    }
+
+    private int greedyClosest(float[] query, int start, int level, boolean exact) {
+        int current = start;
+        float best = score(query, current, exact);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbors = links.get(current)[level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                float score = score(query, neighbors[i], exact);
+                if (score > best) {
+                    best = score;
+                    current = neighbors[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在某一层做 best-first 搜索，返回最多 ef 个结果（小顶堆，堆顶是结果中最差的）
+     *
+     * @param accept 为 null 时所有节点都可以进入结果；否则只有通过的节点进入结果，但所有节点都参与导航
+     */
+    private NodeHeap searchLayer(float[] query, int entry, int ef, int level, IntPredicate accept, boolean exact) {
+        VisitedMarks visited = visitedMarksPool.poll();
+        if (visited == null) {
+            visited = new VisitedMarks();
+        }
+        try {
+            return searchLayer(query, entry, ef, level, accept, exact, visited);
+        } finally {
+            visitedMarksPool.offer(visited);
+        }
+    }
+
+    private NodeHeap searchLayer(float[] query, int entry, int ef, int level, IntPredicate accept, boolean exact,
+                                 VisitedMarks visited) {
+        visited.reset(links.size());
+        NodeHeap candidates = new NodeHeap(ef * 2, false);
+        NodeHeap results = new NodeHeap(ef + 1, true);
+
+        float entryScore = score(query, entry, exact);
+        visited.mark(entry);
+        candidates.push(entry, entryScore);
+        if (accept == null || accept.test(entry)) {
+            results.push(entry, entryScore);
+        }
+        while (candidates.size() > 0) {
+            float candidateScore = candidates.peekScore();
+            int candidate = candidates.pop();
+            if (results.size() >= ef && candidateScore < results.peekScore()) {
+                break;
+            }
+            int[] neighbors = links.get(candidate)[level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (!visited.mark(neighbor)) {
+                    continue;
+                }
+                float score = score(query, neighbor, exact);
+                if (results.size() < ef || score > results.peekScore()) {
+                    candidates.push(neighbor, score);
+                    if (accept == null || accept.test(neighbor)) {
+                        results.push(neighbor, score);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 启发式选邻居：候选按相似度从高到低遍历，只保留与已选邻居相比更靠近目标的候选，使邻居分布在不同方向上
+     */
+    private int[] selectNeighbors(int[] candidates, float[] scores, int max) {
+        int[] selected = new int[Math.min(max, candidates.length)];
+        int count = 0;
+        for (int i = 0; i < candidates.length && count < max; i++) {
+            boolean keep = true;
+            for (int j = 0; j < count; j++) {
+                if (vectors.similarity(candidates[i], selected[j]) > scores[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * 把 target 加入 node 在该层的邻居；邻居已满时重新按启发式挑选
+     */
+    private void connect(int node, int target, int level) {
+        int[] neighbors = links.get(node)[level];
+        int count = neighbors[0];
+        for (int i = 1; i <= count; i++) {
+            if (neighbors[i] == target) {
+                return;
+            }
+        }
+        int max = maxNeighbors(level);
+        if (count < max) {
+            neighbors[count + 1] = target;
+            neighbors[0] = count + 1;
+            return;
+        }
+        NodeHeap heap = new NodeHeap(max + 1, true);
+        for (int i = 1; i <= count; i++) {
+            heap.push(neighbors[i], vectors.similarity(node, neighbors[i]));
+        }
+        heap.push(target, vectors.similarity(node, target));
+        int[] ordered = heap.drainDescending();
+        int[] selected = selectNeighbors(ordered, heap.lastScores(), max);
+        neighbors[0] = selected.length;
+        System.arraycopy(selected, 0, neighbors, 1, selected.length);
+    }
+
+    /**
+     * 写出图结构：入口点、最高层，随后每个节点的层数、删除标记和各层邻居
+     */
+    void writeGraph(DataOutput out) throws IOException {
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int node = 0; node < links.size(); node++) {
+            int[][] nodeLinks = links.get(node);
+            out.writeInt(nodeLinks.length);
+            out.writeByte(deleted.get(node) ? 1 : 0);
+            for (int[] levelLinks : nodeLinks) {
+                for (int i = 0; i <= levelLinks[0]; i++) {
+                    out.writeInt(levelLinks[i]);
+                }
+            }
+        }
+    }
+
+    void readGraph(DataInput in, int count) throws IOException {
+        entryPoint = in.readInt();
+        maxLevel = in.readInt();
+        for (int node = 0; node < count; node++) {
+            int levels = in.readInt();
+            if (in.readByte() == 1) {
+                deleted.set(node);
+            }
+            int[][] nodeLinks = new int[levels][];
+            for (int l = 0; l < levels; l++) {
+                int[] levelLinks = new int[maxNeighbors(l) + 1];
+                levelLinks[0] = in.readInt();
+                for (int i = 1; i <= levelLinks[0]; i++) {
+                    levelLinks[i] = in.readInt();
+                }
+                nodeLinks[l] = levelLinks;
+            }
+            links.add(nodeLinks);
+        }
+    }
+
+    record SearchResult(int[] nodes, float[] scores) {
+    }
+
+    /**
+     * 基于代数的访问标记：每次查询只递增代数，不需要清空数组
+     */
+    private static class VisitedMarks {
+        private int[] marks = new int[0];
+        private int generation;
+
+        void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length * 2)];
+                generation = 0;
+            }
+            generation++;
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        /**
+         * 标记节点，之前未访问过返回 true
+         */
+        boolean mark(int node) {
+            if (marks[node] == generation) {
+                return false;
+            }
+            marks[node] = generation;
+            return true;
+        }
+    }
+
+    /**
+     * 基本类型的二叉堆（节点编号 + 分数），minHeap 为 true 时堆顶分数最小
+     */
+    static class NodeHeap {
+        private int[] nodes;
+        private float[] scores;
+        private int size;
+        private final boolean minHeap;
+        private float[] lastScores = new float[0];
+
+        NodeHeap(int capacity, boolean minHeap) {
+            this.nodes = new int[Math.max(capacity, 4)];
+            this.scores = new float[Math.max(capacity, 4)];
+            this.minHeap = minHeap;
+        }
+
+        int size() {
+            return size;
+        }
+
+        float peekScore() {
+            return scores[0];
+        }
+
+        void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(score, scores[parent])) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            if (size > 0) {
+                int lastNode = nodes[size];
+                float lastScore = scores[size];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && before(scores[child + 1], scores[child])) {
+                        child++;
+                    }
+                    if (!before(scores[child], lastScore)) {
+                        break;
+                    }
+                    nodes[i] = nodes[child];
+                    scores[i] = scores[child];
+                    i = child;
+                }
+                nodes[i] = lastNode;
+                scores[i] = lastScore;
+            }
+            return top;
+        }
+
+        /**
+         * 取出所有元素，按分数从高到低返回节点编号；对应分数通过 {@link #lastScores()} 获取
+         */
+        int[] drainDescending() {
+            int count = size;
+            int[] resultNodes = new int[count];
+            float[] resultScores = new float[count];
+            for (int i = 0; i < count; i++) {
+                float score = peekScore();
+                int node = pop();
+                int position = minHeap ? count - 1 - i : i;
+                resultNodes[position] = node;
+                resultScores[position] = score;
+            }
+            lastScores = resultScores;
+            return resultNodes;
+        }
+
+        float[] lastScores() {
+            return lastScores;
+        }
+
+        private boolean before(float a, float b) {
+            return minHeap ? a < b : a > b;
+        }
+    }
+}
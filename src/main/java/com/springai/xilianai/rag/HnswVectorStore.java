@@ -0,0 +1,366 @@
+package com.springai.xilianai.rag;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.expression.Expression;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * 进程内的 HNSW 近似最近邻向量库
+ * <p>
+ * 向量归一化后存放在连续的 float 数组中，按余弦相似度建 HNSW 图；查询先在图上找近邻，
+ * 元数据过滤（如 DocumentLoader 写入的 status / filename）与 {@code SimpleVectorStore} 使用同样的表达式语义。
+ * 过滤条件命中的文档太少时退化为对过滤后文档的精确扫描，保证结果数量。
+ * <p>
+ * 持久化：向量和图结构顺序写入一个快照文件（{@code .hnsw}），文档正文和元数据写入旁边的 {@code .docs.json}。
+ * <p>
+ * 向量存储可替换为堆外存储（见 {@link OffHeapVectorStorage}）；量化存储上的图搜索分数是近似值，
+ * 会多取 {@code rescoreFactor} 倍的候选，再用原始向量重新打分后截取前 topK 个。
+ */
+@Slf4j
+public class HnswVectorStore implements VectorStore {
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int VERSION = 1;
+    /**
+     * 保存和加载快照时的读写缓冲区大小
+     */
+    private static final int IO_BUFFER_BYTES = 1 << 20;
+    /**
+     * 每次向量化请求最多包含的文本条数
+     */
+    private static final int EMBEDDING_BATCH_SIZE = 10;
+
+    private final EmbeddingModel embeddingModel;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final IntFunction<VectorStorage> storageFactory;
+    private final int rescoreFactor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private HnswIndex index;
+    private final List<Document> documents = new ArrayList<>();
+    private final Map<String, Integer> nodeById = new HashMap<>();
+
+    public HnswVectorStore(EmbeddingModel embeddingModel, int m, int efConstruction, int efSearch) {
+        this(embeddingModel, m, efConstruction, efSearch, HeapVectorStorage::new, 1);
+    }
+
+    /**
+     * @param storageFactory 按向量维度创建向量存储
+     * @param rescoreFactor  近似存储上多取的候选倍数，用于重新打分
+     */
+    HnswVectorStore(EmbeddingModel embeddingModel, int m, int efConstruction, int efSearch,
+                    IntFunction<VectorStorage> storageFactory, int rescoreFactor) {
+        this.embeddingModel = embeddingModel;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.storageFactory = storageFactory;
+        this.rescoreFactor = Math.max(1, rescoreFactor);
+    }
+
+    @Override
+    public void add(List<Document> documentsToAdd) {
+        if (documentsToAdd.isEmpty()) {
+            return;
+        }
+        // 向量化在锁外进行，不阻塞查询
+        List<float[]> vectors = new ArrayList<>(documentsToAdd.size());
+        for (int from = 0; from < documentsToAdd.size(); from += EMBEDDING_BATCH_SIZE) {
+            List<String> texts = documentsToAdd.subList(from, Math.min(from + EMBEDDING_BATCH_SIZE, documentsToAdd.size()))
+                    .stream().map(Document::getText).toList();
+            vectors.addAll(embeddingModel.embed(texts));
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documentsToAdd.size(); i++) {
+                Document document = documentsToAdd.get(i);
+                float[] vector = Vectors.normalize(vectors.get(i));
+                if (index == null) {
+                    index = newIndex(vector.length);
+                }
+                Integer previous = nodeById.get(document.getId());
+                if (previous != null) {
+                    index.markDeleted(previous);
+                }
+                int node = index.insert(vector);
+                documents.add(document);
+                nodeById.put(document.getId(), node);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idList) {
+                Integer node = nodeById.remove(id);
+                if (node != null) {
+                    index.markDeleted(node);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Expression expression = MetadataFilter.parse(filterExpression);
+        lock.writeLock().lock();
+        try {
+            List<String> ids = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : nodeById.entrySet()) {
+                if (MetadataFilter.matches(expression, documents.get(entry.getValue()))) {
+                    ids.add(entry.getKey());
+                }
+            }
+            delete(ids);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = Vectors.normalize(embeddingModel.embed(request.getQuery()));
+        Expression filter = request.hasFilterExpression() ? MetadataFilter.parse(request.getFilterExpression()) : null;
+        int topK = request.getTopK();
+
+        lock.readLock().lock();
+        try {
+            if (index == null) {
+                return List.of();
+            }
+            IntPredicate accept = filter == null ? null : node -> MetadataFilter.matches(filter, documents.get(node));
+            boolean rescore = index.vectors().approximate();
+            int candidates = rescore ? topK * rescoreFactor : topK;
+            HnswIndex.SearchResult result = index.search(query, candidates, Math.max(efSearch, candidates), accept);
+            if (filter != null && result.nodes().length < topK) {
+                // 过滤条件很严格时，图搜索可能凑不够结果，改为精确扫描满足条件的文档
+                result = exactSearch(query, topK, accept);
+            } else if (rescore) {
+                result = rescore(query, result, topK);
+            }
+            List<Document> results = new ArrayList<>(result.nodes().length);
+            for (int i = 0; i < result.nodes().length; i++) {
+                double score = result.scores()[i];
+                if (score < request.getSimilarityThreshold()) {
+                    continue;
+                }
+                results.add(toResult(documents.get(result.nodes()[i]), score));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * 保存向量和图结构，文档写入同名 .docs.json
+     * <p>
+     * 经固定大小的缓冲区顺序写出，不整体映射文件：单个映射不能超过 2GB，1536 维向量约 35 万个切片就会超出。
+     */
+    public void save(File file) {
+        lock.readLock().lock();
+        try {
+            Path path = file.toPath();
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            int dimensions = index == null ? 0 : index.vectors().dimensions();
+            int count = index == null ? 0 : index.size();
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), IO_BUFFER_BYTES));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(dimensions);
+                out.writeInt(count);
+                if (index != null) {
+                    index.vectors().writeTo(out);
+                    index.writeGraph(out);
+                }
+                out.flush();
+                channel.force(true);
+            }
+            // 文档同样先写临时文件再原子替换；两次替换之间崩溃时，加载会发现节点数和文档数不一致
+            Path documentsPath = documentsFile(file).toPath();
+            Path documentsTmp = documentsPath.resolveSibling(documentsPath.getFileName() + ".tmp");
+            objectMapper.writeValue(documentsTmp.toFile(), documents.stream().map(StoredDocument::of).toList());
+            replace(documentsTmp, documentsPath);
+            replace(tmp, path);
+            log.info("HNSW 向量库已保存: {}，节点数: {}", file, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException("HNSW 向量库保存失败: " + file, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 从快照文件加载向量库，替换当前内容；经固定大小的缓冲区顺序读取，文件大小不受 2GB 限制
+     */
+    public void load(File file) {
+        lock.writeLock().lock();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file.toPath()), IO_BUFFER_BYTES))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalStateException("不是有效的 HNSW 向量库文件: " + file);
+            }
+            int dimensions = in.readInt();
+            int count = in.readInt();
+            List<StoredDocument> stored = objectMapper.readValue(documentsFile(file), new TypeReference<>() {
+            });
+            if (stored.size() != count) {
+                throw new IllegalStateException("HNSW 向量库文件与文档文件不一致: " + file + "，节点数: " + count
+                        + "，文档数: " + stored.size());
+            }
+
+            documents.clear();
+            nodeById.clear();
+            if (index != null) {
+                index.vectors().close();
+                index = null;
+            }
+            if (count > 0) {
+                VectorStorage storage = storageFactory.apply(dimensions);
+                float[] vector = new float[dimensions];
+                byte[] row = new byte[dimensions * Float.BYTES];
+                FloatBuffer rowFloats = ByteBuffer.wrap(row).asFloatBuffer();
+                for (int node = 0; node < count; node++) {
+                    in.readFully(row);
+                    rowFloats.get(0, vector);
+                    storage.add(vector);
+                }
+                index = new HnswIndex(storage, m, efConstruction);
+                index.readGraph(in, count);
+            }
+            for (int node = 0; node < stored.size(); node++) {
+                Document document = stored.get(node).toDocument();
+                documents.add(document);
+                if (index != null && !index.isDeleted(node)) {
+                    nodeById.put(document.getId(), node);
+                }
+            }
+            log.info("HNSW 向量库已加载: {}，节点数: {}", file, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException("HNSW 向量库加载失败: " + file, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private HnswIndex newIndex(int dimensions) {
+        return new HnswIndex(storageFactory.apply(dimensions), m, efConstruction);
+    }
+
+    /**
+     * 用原始向量对近似结果重新打分，返回前 topK 个
+     */
+    private HnswIndex.SearchResult rescore(float[] query, HnswIndex.SearchResult approximate, int topK) {
+        HnswIndex.NodeHeap heap = new HnswIndex.NodeHeap(topK + 1, true);
+        for (int node : approximate.nodes()) {
+            heap.push(node, index.vectors().exactSimilarity(query, node));
+            if (heap.size() > topK) {
+                heap.pop();
+            }
+        }
+        int[] nodes = heap.drainDescending();
+        return new HnswIndex.SearchResult(nodes, heap.lastScores());
+    }
+
+    private HnswIndex.SearchResult exactSearch(float[] query, int topK, IntPredicate accept) {
+        HnswIndex.NodeHeap heap = new HnswIndex.NodeHeap(topK + 1, true);
+        for (int node : nodeById.values()) {
+            if (!accept.test(node)) {
+                continue;
+            }
+            heap.push(node, index.vectors().exactSimilarity(query, node));
+            if (heap.size() > topK) {
+                heap.pop();
+            }
+        }
+        int[] nodes = heap.drainDescending();
+        return new HnswIndex.SearchResult(nodes, heap.lastScores());
+    }
+
+    private static Document toResult(Document document, double score) {
+        Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+        metadata.put("distance", 1 - score);
+        return Document.builder()
+                .id(document.getId())
+                .text(document.getText())
+                .metadata(metadata)
+                .score(score)
+                .build();
+    }
+
+    private static File documentsFile(File file) {
+        return new File(file.getParentFile(), file.getName() + ".docs.json");
+    }
+
+    private static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 持久化用的文档结构（节点编号即列表下标）
+     */
+    record StoredDocument(String id, String text, Map<String, Object> metadata) {
+
+        static StoredDocument of(Document document) {
+            return new StoredDocument(document.getId(), document.getText(), document.getMetadata());
+        }
+
+        Document toDocument() {
+            return Document.builder().id(id).text(text).metadata(metadata).build();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.springai.xilianai.rag;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.expression.Expression;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 混合检索：向量检索 + BM25 关键词检索，用倒数排名融合（RRF）合并结果
+ * <p>
+ * 人名、编号（如“093”）这类精确词在向量检索中不一定排得靠前，倒排索引可以直接命中；
+ * 两路结果按 {@code 1 / (k + 排名)} 累加分数后重新排序，取前 topK 个。
+ * <p>
+ * 结果的 score 是融合分数，只用于排序；向量检索的余弦相似度保留在元数据 {@link #VECTOR_SCORE}（以及下层写入的 distance），
+ * BM25 分数保留在 {@link #LEXICAL_SCORE}。关键词命中要达到最低 BM25 分数才参与融合，避免只命中常见单字的文档混进来；
+ * 请求设置了相似度阈值时，只有向量分数也达到阈值的文档才会出现在结果中，关键词检索只调整它们的排序。
+ * <p>
+ * 倒排索引随 {@link #add} / {@link #delete} 与向量库同步更新，持久化在向量库快照旁边的 {@code .bm25.json}。
+ */
+@Slf4j
+public class HybridVectorStore implements VectorStore {
+
+    /**
+     * 结果元数据：向量检索的余弦相似度，只命中关键词的文档没有这一项
+     */
+    public static final String VECTOR_SCORE = "vector_score";
+    /**
+     * 结果元数据：BM25 分数，没有命中关键词的文档没有这一项
+     */
+    public static final String LEXICAL_SCORE = "lexical_score";
+
+    private static final String LEXICAL_INDEX_SUFFIX = ".bm25.json";
+
+    private final VectorStore delegate;
+    private final Bm25Index lexicalIndex = new Bm25Index();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int rrfK;
+    private final int lexicalCandidates;
+    private final int vectorCandidates;
+    private final double lexicalMinScore;
+
+    /**
+     * @param rrfK              RRF 公式中的常数 k，越大排名靠后的结果权重越接近靠前的
+     * @param lexicalCandidates 关键词检索取回的候选数
+     * @param vectorCandidates  向量检索取回的候选数，不大于 0 时与请求的 topK 相同
+     * @param lexicalMinScore   关键词命中参与融合的最低 BM25 分数
+     */
+    public HybridVectorStore(VectorStore delegate, int rrfK, int lexicalCandidates, int vectorCandidates,
+                             double lexicalMinScore) {
+        this.delegate = delegate;
+        this.rrfK = rrfK;
+        this.lexicalCandidates = lexicalCandidates;
+        this.vectorCandidates = vectorCandidates;
+        this.lexicalMinScore = lexicalMinScore;
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+        lexicalIndex.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+        lexicalIndex.delete(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+        Expression expression = MetadataFilter.parse(filterExpression);
+        lexicalIndex.delete(lexicalIndex.documents().stream()
+                .filter(document -> MetadataFilter.matches(expression, document))
+                .map(Document::getId)
+                .toList());
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        int topK = request.getTopK();
+        // 有阈值时只融合两路都命中的文档，多取一些向量候选，让关键词命中有机会在其中找到向量分数
+        boolean thresholded = request.getSimilarityThreshold() > SearchRequest.SIMILARITY_THRESHOLD_ACCEPT_ALL;
+        int vectorTopK = (vectorCandidates > 0 ? vectorCandidates : topK) + (thresholded ? lexicalCandidates : 0);
+        List<Document> vectorResults = delegate.similaritySearch(SearchRequest.from(request)
+                .topK(vectorTopK)
+                .build());
+
+        long start = System.nanoTime();
+        Expression filter = request.hasFilterExpression() ? MetadataFilter.parse(request.getFilterExpression()) : null;
+        List<Bm25Index.Hit> lexicalResults = lexicalIndex.search(request.getQuery(), lexicalCandidates,
+                filter == null ? null : document -> MetadataFilter.matches(filter, document));
+        log.debug("关键词检索命中 {} 篇，耗时 {} us", lexicalResults.size(), (System.nanoTime() - start) / 1000);
+
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, Double> vectorScores = new HashMap<>();
+        Map<String, Float> lexicalScores = new HashMap<>();
+        for (int rank = 0; rank < vectorResults.size(); rank++) {
+            Document document = vectorResults.get(rank);
+            documents.put(document.getId(), document);
+            if (document.getScore() != null) {
+                vectorScores.put(document.getId(), document.getScore());
+            }
+            scores.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+        }
+        int lexicalRank = 0;
+        for (Bm25Index.Hit hit : lexicalResults) {
+            if (hit.score() < lexicalMinScore) {
+                // 按分数从高到低排列，后面的都达不到
+                break;
+            }
+            Document document = hit.document();
+            if (thresholded && !documents.containsKey(document.getId())) {
+                continue;
+            }
+            documents.putIfAbsent(document.getId(), document);
+            lexicalScores.put(document.getId(), hit.score());
+            scores.merge(document.getId(), 1.0 / (rrfK + lexicalRank + 1), Double::sum);
+            lexicalRank++;
+        }
+
+        List<Document> fused = new ArrayList<>(documents.values());
+        fused.sort(Comparator.comparingDouble((Document document) -> scores.get(document.getId())).reversed());
+        List<Document> results = new ArrayList<>(Math.min(topK, fused.size()));
+        for (Document document : fused.subList(0, Math.min(topK, fused.size()))) {
+            Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+            Double vectorScore = vectorScores.get(document.getId());
+            if (vectorScore != null) {
+                metadata.put(VECTOR_SCORE, vectorScore);
+            }
+            Float lexicalScore = lexicalScores.get(document.getId());
+            if (lexicalScore != null) {
+                metadata.put(LEXICAL_SCORE, lexicalScore.doubleValue());
+            }
+            results.add(Document.builder()
+                    .id(document.getId())
+                    .text(document.getText())
+                    .metadata(metadata)
+                    .score(scores.get(document.getId()))
+                    .build());
+        }
+        return results;
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName() + "(" + delegate.getName() + ")";
+    }
+
+    /**
+     * 把倒排索引中的文档写到向量库快照旁边
+     */
+    public void saveLexicalIndex(File snapshot) {
+        try {
+            objectMapper.writeValue(lexicalIndexFile(snapshot),
+                    lexicalIndex.documents().stream().map(HnswVectorStore.StoredDocument::of).toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("关键词索引保存失败: " + snapshot, e);
+        }
+    }
+
+    /**
+     * 从向量库快照旁边的文件重建倒排索引
+     */
+    public void loadLexicalIndex(File snapshot) {
+        File file = lexicalIndexFile(snapshot);
+        lexicalIndex.clear();
+        if (!file.exists()) {
+            // 快照是在启用混合检索之前保存的，需要重新建索引
+            throw new IllegalStateException("关键词索引文件不存在: " + file);
+        }
+        try {
+            List<HnswVectorStore.StoredDocument> stored = objectMapper.readValue(file, new TypeReference<>() {
+            });
+            lexicalIndex.add(stored.stream().map(HnswVectorStore.StoredDocument::toDocument).toList());
+            log.info("关键词索引已加载: {}，文档数: {}", file, stored.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("关键词索引加载失败: " + file, e);
+        }
+    }
+
+    private static File lexicalIndexFile(File snapshot) {
+        return new File(snapshot.getParentFile(), snapshot.getName() + LEXICAL_INDEX_SUFFIX);
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.ai.document.Document;
 import org.springframework.ai.model.transformer.KeywordMetadataEnricher;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -13,11 +14,48 @@ import java.util.List;
  */
 @Component
 public class KeywordEnricher {
+
+    /**
+     * KeywordMetadataEnricher 写入的元信息键
+     */
+    public static final String KEYWORDS_METADATA_KEY = "excerpt_keywords";
+
     @Resource
     private ChatModel dashscopeChatModel;
 
+    @Resource
+    private EmbeddingCache embeddingCache;
+
+    /**
+     * 内容未变的文档直接复用缓存的关键词，只对新增或修改过的文档调用大模型
+     */
     public List<Document> enrichDocuments(List<Document> documents) {
-        KeywordMetadataEnricher keywordMetadataEnricher = new KeywordMetadataEnricher(dashscopeChatModel, 5);
-        return  keywordMetadataEnricher.apply(documents);
+        List<Document> misses = new ArrayList<>();
+        for (Document document : documents) {
+            String keywords = embeddingCache.getKeywords(document.getText());
+            if (keywords != null) {
+                document.getMetadata().put(KEYWORDS_METADATA_KEY, keywords);
+            } else {
+                misses.add(document);
+            }
+        }
+        if (!misses.isEmpty()) {
+            KeywordMetadataEnricher keywordMetadataEnricher = new KeywordMetadataEnricher(dashscopeChatModel, 5);
+            for (Document document : keywordMetadataEnricher.apply(misses)) {
+                Object keywords = document.getMetadata().get(KEYWORDS_METADATA_KEY);
+                if (keywords != null) {
+                    embeddingCache.putKeywords(document.getText(), keywords.toString());
+                }
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * 为单个文档补充关键词，命中缓存时不调用大模型
+     */
+    public Document enrichDocument(Document document) {
+        enrichDocuments(List.of(document));
+        return document;
     }
 }
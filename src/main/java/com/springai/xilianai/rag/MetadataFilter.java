@@ -0,0 +1,31 @@
+package com.springai.xilianai.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.converter.SimpleVectorStoreFilterExpressionConverter;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+/**
+ * 元数据过滤：与 {@code SimpleVectorStore} 相同，把过滤表达式转换为基于 {@code #metadata} 的 SpEL 表达式求值
+ */
+final class MetadataFilter {
+
+    private static final SpelExpressionParser EXPRESSION_PARSER = new SpelExpressionParser();
+    private static final SimpleVectorStoreFilterExpressionConverter FILTER_EXPRESSION_CONVERTER =
+            new SimpleVectorStoreFilterExpressionConverter();
+
+    private MetadataFilter() {
+    }
+
+    static Expression parse(Filter.Expression filterExpression) {
+        return EXPRESSION_PARSER.parseExpression(FILTER_EXPRESSION_CONVERTER.convertExpression(filterExpression));
+    }
+
+    static boolean matches(Expression expression, Document document) {
+        StandardEvaluationContext context = new StandardEvaluationContext();
+        context.setVariable("metadata", document.getMetadata());
+        return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+    }
+}
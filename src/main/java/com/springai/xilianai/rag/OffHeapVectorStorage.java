@@ -0,0 +1,341 @@
+package com.springai.xilianai.rag;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * 堆外向量存储：向量数据不占用 Java 堆，不参与 GC
+ * <p>
+ * 原始 float 向量写入内存映射文件（未指定目录时放在直接内存），由操作系统页缓存管理；
+ * 可选把向量量化为 int8（每维 1 字节 + 每条向量一个缩放系数）或二值（每维 1 bit）编码放在直接内存，
+ * 图搜索时只扫描紧凑的编码，最后由 {@link HnswVectorStore} 用原始向量对前若干个候选重新打分。
+ * <p>
+ * 数据按固定大小的块分配，扩容时不需要搬移已有向量。
+ */
+class OffHeapVectorStorage implements VectorStorage {
+
+    /**
+     * 每块容纳的向量数（1536 维时原始向量每块 6 MB）
+     */
+    private static final int CHUNK_RECORDS = 1024;
+
+    private final int dimensions;
+    private final RagProperties.Quantization quantization;
+    private final Path file;
+    private final FileChannel channel;
+    private final Region floats;
+    private final Region codes;
+    private final int binaryWords;
+    /**
+     * 查询符号位的暂存池，做法同 {@link HnswIndex} 的访问标记池：不用 ThreadLocal，虚拟线程下它等于每次查询重新分配。
+     * 按后进先出取用，没有并发查询时线程取回的总是自己刚归还的那个，同一个查询数组不会重复计算
+     */
+    private final Deque<BinaryQuery> binaryQueryPool = new ConcurrentLinkedDeque<>();
+    private int size;
+
+    /**
+     * @param directory 原始向量映射文件所在目录，为 null 时放在直接内存
+     */
+    OffHeapVectorStorage(int dimensions, RagProperties.Quantization quantization, Path directory) {
+        this.dimensions = dimensions;
+        this.quantization = quantization;
+        this.binaryWords = (dimensions + Long.SIZE - 1) / Long.SIZE;
+        try {
+            if (directory != null) {
+                Files.createDirectories(directory);
+                this.file = Files.createTempFile(directory, "vectors-", ".f32");
+                this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            } else {
+                this.file = null;
+                this.channel = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建向量映射文件失败: " + directory, e);
+        }
+        this.floats = new Region(dimensions * Float.BYTES, channel);
+        this.codes = switch (quantization) {
+            case NONE -> null;
+            case INT8 -> new Region(Float.BYTES + dimensions, null);
+            case BINARY -> new Region(binaryWords * Long.BYTES, null);
+        };
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    RagProperties.Quantization quantization() {
+        return quantization;
+    }
+
+    @Override
+    public int add(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("向量维度不匹配: " + vector.length + " != " + dimensions);
+        }
+        int node = size;
+        ByteBuffer buffer = floats.chunkFor(node);
+        int offset = floats.offset(node);
+        for (int i = 0; i < dimensions; i++) {
+            buffer.putFloat(offset + i * Float.BYTES, vector[i]);
+        }
+        if (quantization == RagProperties.Quantization.INT8) {
+            encodeInt8(vector, codes.chunkFor(node), codes.offset(node));
+        } else if (quantization == RagProperties.Quantization.BINARY) {
+            encodeBinary(vector, codes.chunkFor(node), codes.offset(node));
+        }
+        return size++;
+    }
+
+    @Override
+    public float similarity(float[] query, int node) {
+        return switch (quantization) {
+            case NONE -> exactSimilarity(query, node);
+            case INT8 -> int8Similarity(query, node);
+            case BINARY -> binarySimilarity(query, node);
+        };
+    }
+
+    @Override
+    public float exactSimilarity(float[] query, int node) {
+        ByteBuffer buffer = floats.chunk(node);
+        int offset = floats.offset(node);
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            sum += query[i] * buffer.getFloat(offset + i * Float.BYTES);
+        }
+        return sum;
+    }
+
+    @Override
+    public boolean approximate() {
+        return quantization != RagProperties.Quantization.NONE;
+    }
+
+    /**
+     * 节点之间（建图时）始终使用原始向量，保证图的质量
+     */
+    @Override
+    public float similarity(int a, int b) {
+        ByteBuffer bufferA = floats.chunk(a);
+        ByteBuffer bufferB = floats.chunk(b);
+        int offsetA = floats.offset(a);
+        int offsetB = floats.offset(b);
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            sum += bufferA.getFloat(offsetA + i * Float.BYTES) * bufferB.getFloat(offsetB + i * Float.BYTES);
+        }
+        return sum;
+    }
+
+    /**
+     * 向量数据都在堆外，堆上只有块的引用
+     */
+    @Override
+    public long heapBytes() {
+        return (long) (floats.chunks.size() + (codes == null ? 0 : codes.chunks.size())) * Long.BYTES;
+    }
+
+    @Override
+    public long offHeapBytes() {
+        return floats.allocatedBytes() + (codes == null ? 0 : codes.allocatedBytes());
+    }
+
+    /**
+     * 量化编码占用的字节数（不量化时为 0）
+     */
+    long codeBytes() {
+        return codes == null ? 0 : codes.allocatedBytes();
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        // 存储按本机字节序，文件按大端，逐条向量转换后写出
+        ByteBuffer row = ByteBuffer.allocate(dimensions * Float.BYTES);
+        for (int node = 0; node < size; node++) {
+            ByteBuffer chunk = floats.chunk(node);
+            int offset = floats.offset(node);
+            row.clear();
+            for (int i = 0; i < dimensions; i++) {
+                row.putFloat(chunk.getFloat(offset + i * Float.BYTES));
+            }
+            out.write(row.array());
+        }
+    }
+
+    @Override
+    public void close() {
+        floats.chunks.clear();
+        if (codes != null) {
+            codes.chunks.clear();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("关闭向量映射文件失败: " + file, e);
+            }
+        }
+    }
+
+    /**
+     * 对称量化：scale = max|v| / 127，code = round(v / scale)
+     */
+    private void encodeInt8(float[] vector, ByteBuffer buffer, int offset) {
+        float max = 0f;
+        for (float value : vector) {
+            max = Math.max(max, Math.abs(value));
+        }
+        float scale = max == 0 ? 0 : max / 127f;
+        buffer.putFloat(offset, scale);
+        for (int i = 0; i < dimensions; i++) {
+            int code = scale == 0 ? 0 : Math.round(vector[i] / scale);
+            buffer.put(offset + Float.BYTES + i, (byte) Math.max(-127, Math.min(127, code)));
+        }
+    }
+
+    private void encodeBinary(float[] vector, ByteBuffer buffer, int offset) {
+        for (int w = 0; w < binaryWords; w++) {
+            buffer.putLong(offset + w * Long.BYTES, signBits(vector, w));
+        }
+    }
+
+    private long signBits(float[] vector, int word) {
+        long bits = 0L;
+        int base = word * Long.SIZE;
+        for (int b = 0; b < Long.SIZE && base + b < dimensions; b++) {
+            if (vector[base + b] > 0) {
+                bits |= 1L << b;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * 非对称计算：查询保持 float，与节点的 int8 编码做点积
+     */
+    private float int8Similarity(float[] query, int node) {
+        ByteBuffer buffer = codes.chunk(node);
+        int offset = codes.offset(node);
+        float scale = buffer.getFloat(offset);
+        int base = offset + Float.BYTES;
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            sum += query[i] * buffer.get(base + i);
+        }
+        return sum * scale;
+    }
+
+    /**
+     * 查询同样取符号位，按汉明距离估算余弦相似度：1 - 2 * hamming / d
+     */
+    private float binarySimilarity(float[] query, int node) {
+        BinaryQuery scratch = binaryQueryPool.pollFirst();
+        if (scratch == null) {
+            scratch = new BinaryQuery(binaryWords);
+        }
+        try {
+            long[] queryBits = scratch.bits(query, this);
+            ByteBuffer buffer = codes.chunk(node);
+            int offset = codes.offset(node);
+            int hamming = 0;
+            for (int w = 0; w < binaryWords; w++) {
+                hamming += Long.bitCount(queryBits[w] ^ buffer.getLong(offset + w * Long.BYTES));
+            }
+            return 1f - 2f * hamming / dimensions;
+        } finally {
+            binaryQueryPool.offerFirst(scratch);
+        }
+    }
+
+    private static class BinaryQuery {
+        private float[] query;
+        private final long[] bits;
+
+        BinaryQuery(int words) {
+            this.bits = new long[words];
+        }
+
+        /**
+         * 一次查询会对很多节点打分，暂存的仍是同一个查询数组时直接复用符号位
+         */
+        long[] bits(float[] query, OffHeapVectorStorage storage) {
+            if (this.query != query) {
+                for (int w = 0; w < bits.length; w++) {
+                    bits[w] = storage.signBits(query, w);
+                }
+                this.query = query;
+            }
+            return bits;
+        }
+    }
+
+    /**
+     * 定长记录的分块存储：块来自内存映射文件或直接内存
+     */
+    private static class Region {
+        private final int recordBytes;
+        private final int recordsPerChunk;
+        private final FileChannel channel;
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+
+        Region(int recordBytes, FileChannel channel) {
+            this.recordBytes = recordBytes;
+            this.recordsPerChunk = CHUNK_RECORDS;
+            this.channel = channel;
+        }
+
+        ByteBuffer chunk(int record) {
+            return chunks.get(record / recordsPerChunk);
+        }
+
+        int offset(int record) {
+            return (record % recordsPerChunk) * recordBytes;
+        }
+
+        /**
+         * 取得写入 record 所需的块，必要时分配新块
+         */
+        ByteBuffer chunkFor(int record) {
+            int index = record / recordsPerChunk;
+            while (chunks.size() <= index) {
+                chunks.add(allocate(chunks.size()));
+            }
+            return chunks.get(index);
+        }
+
+        long allocatedBytes() {
+            return (long) chunks.size() * recordsPerChunk * recordBytes;
+        }
+
+        private ByteBuffer allocate(int index) {
+            int bytes = recordsPerChunk * recordBytes;
+            try {
+                ByteBuffer buffer = channel == null
+                        ? ByteBuffer.allocateDirect(bytes)
+                        : channel.map(FileChannel.MapMode.READ_WRITE, (long) index * bytes, bytes);
+                return buffer.order(ByteOrder.nativeOrder());
+            } catch (IOException e) {
+                throw new UncheckedIOException("映射向量文件失败", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.springai.xilianai.rag;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 用户问题的向量缓存（LRU，只在内存中）
+ * <p>
+ * 同一个问题在一次对话里会被语义缓存和检索增强各向量化一次，重复或只差空白、大小写的问题也很常见；
+ * 这里按规范化后的文本缓存向量，命中时不再调用远程向量模型。
+ * 缓存的是文本到向量的映射，与向量库内容无关，重建索引时不需要失效。
+ */
+@Component
+public class QueryEmbeddingCache {
+
+    private final EmbeddingModel embeddingModel;
+    private final Map<String, float[]> embeddings;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public QueryEmbeddingCache(EmbeddingModel embeddingModel, RagProperties ragProperties, MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        int maxEntries = ragProperties.getRetrieval().getQueryEmbeddingCacheSize();
+        this.embeddings = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.hitCounter = meterRegistry.counter("xilian.rag.query.embedding.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("xilian.rag.query.embedding.cache", "result", "miss");
+    }
+
+    /**
+     * 返回问题的向量，未命中时调用远程模型并写入缓存
+     */
+    public float[] embed(String text) {
+        String key = normalize(text);
+        synchronized (embeddings) {
+            float[] cached = embeddings.get(key);
+            if (cached != null) {
+                hitCounter.increment();
+                return cached;
+            }
+        }
+        missCounter.increment();
+        float[] embedding = embeddingModel.embed(text);
+        synchronized (embeddings) {
+            embeddings.put(key, embedding);
+        }
+        return embedding;
+    }
+
+    /**
+     * 去掉首尾空白、合并连续空白并转小写，使只差格式的问题共用同一个向量
+     */
+    static String normalize(String text) {
+        return text == null ? "" : text.strip().replaceAll("\\s+", " ").toLowerCase();
+    }
+}
@@ -0,0 +1,198 @@
+package com.springai.xilianai.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 知识库索引管理：负责（同步或后台异步地）构建向量库，并对外暴露就绪状态
+ * <p>
+ * 建好的向量库会连同语料指纹保存到磁盘，语料未变时直接加载快照，不调用任何远程模型；
+ * 语料有变化时只对新增或修改过的切片做关键词增强和向量化，其余从 {@link EmbeddingCache} 复用。
+ * 异步模式下文档分批入库，每批完成后即可被检索；就绪状态通过健康检查 {@code ragIndex} 暴露。
+ * 每批入库和加载快照后发布 {@link VectorStoreReindexedEvent}，检索相关的缓存据此失效。
+ */
+@Component("ragIndex")
+@Slf4j
+public class RagIndexManager implements HealthIndicator {
+
+    private static final String FINGERPRINT_SUFFIX = ".fingerprint";
+
+    public enum State {
+        PENDING,
+        BUILDING,
+        READY,
+        FAILED
+    }
+
+    private final DocumentLoader documentLoader;
+    private final DocumentIngestionPipeline documentIngestionPipeline;
+    private final EmbeddingCache embeddingCache;
+    private final RagProperties ragProperties;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private volatile State state = State.PENDING;
+    private final AtomicInteger indexedDocuments = new AtomicInteger();
+    private volatile int totalDocuments;
+
+    private VectorStore vectorStore;
+    private CachingEmbeddingModel embeddingModel;
+    private String snapshotName;
+    private Consumer<File> snapshotSaver;
+    private Consumer<File> snapshotLoader;
+
+    public RagIndexManager(DocumentLoader documentLoader, DocumentIngestionPipeline documentIngestionPipeline,
+                           EmbeddingCache embeddingCache, RagProperties ragProperties,
+                           ApplicationEventPublisher eventPublisher) {
+        this.documentLoader = documentLoader;
+        this.documentIngestionPipeline = documentIngestionPipeline;
+        this.embeddingCache = embeddingCache;
+        this.ragProperties = ragProperties;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * 登记需要填充的向量库：同步模式下立即构建，异步模式下等应用启动完成后在后台构建
+     *
+     * @param embeddingModel 建索引专用的向量模型，未命中的切片向量写入磁盘缓存
+     * @param snapshotName   快照文件名（位于缓存目录下）
+     * @param snapshotSaver  把向量库保存到快照文件
+     * @param snapshotLoader 从快照文件加载向量库
+     */
+    public void initialize(VectorStore vectorStore, CachingEmbeddingModel embeddingModel, String snapshotName,
+                           Consumer<File> snapshotSaver, Consumer<File> snapshotLoader) {
+        this.vectorStore = vectorStore;
+        this.embeddingModel = embeddingModel;
+        this.snapshotName = snapshotName;
+        this.snapshotSaver = snapshotSaver;
+        this.snapshotLoader = snapshotLoader;
+        if (ragProperties.getWarmup() == RagProperties.Warmup.SYNC) {
+            build();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (ragProperties.getWarmup() == RagProperties.Warmup.ASYNC && vectorStore != null && state == State.PENDING) {
+            Thread.ofVirtual().name("rag-index-warmup").start(this::build);
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 当前请求是否应该做检索增强：索引就绪，或建索引期间配置为检索已入库的部分
+     */
+    public boolean isRetrievalAvailable() {
+        return switch (state) {
+            case READY -> true;
+            case BUILDING -> ragProperties.getUnreadyMode() == RagProperties.UnreadyMode.PARTIAL
+                    && indexedDocuments.get() > 0;
+            default -> false;
+        };
+    }
+
+    /**
+     * 建索引期间配置为检索已入库的部分（PARTIAL）时对话照常提供，报告 UP，进度见详情；否则报告 OUT_OF_SERVICE
+     */
+    @Override
+    public Health health() {
+        Health.Builder builder = switch (state) {
+            case READY -> Health.up();
+            case FAILED -> Health.down();
+            case BUILDING -> ragProperties.getUnreadyMode() == RagProperties.UnreadyMode.PARTIAL
+                    ? Health.up() : Health.outOfService();
+            default -> Health.outOfService();
+        };
+        return builder.withDetail("state", state)
+                .withDetail("indexedDocuments", indexedDocuments.get())
+                .withDetail("totalDocuments", totalDocuments)
+                .build();
+    }
+
+    private void build() {
+        state = State.BUILDING;
+        long start = System.currentTimeMillis();
+        try {
+            // 加载文档
+            List<Document> documentList = documentLoader.loadMarkdowns();
+            // 自主切分文档
+//            List<Document> splitDocuments = tokenTextSplitter.splitCustomized(documentList);
+            totalDocuments = documentList.size();
+
+            Path cacheDir = Paths.get(ragProperties.getCacheDir());
+            File storeFile = cacheDir.resolve(snapshotName).toFile();
+            Path fingerprintFile = cacheDir.resolve(snapshotName + FINGERPRINT_SUFFIX);
+            String fingerprint = EmbeddingCache.fingerprint(documentList);
+            if (storeFile.exists() && fingerprint.equals(readFingerprint(fingerprintFile))) {
+                try {
+                    snapshotLoader.accept(storeFile);
+                    indexedDocuments.set(documentList.size());
+                    state = State.READY;
+                    eventPublisher.publishEvent(new VectorStoreReindexedEvent(indexedDocuments.get()));
+                    log.info("语料未变化，直接加载向量库快照: {}", storeFile);
+                    return;
+                } catch (RuntimeException e) {
+                    log.warn("向量库快照加载失败，重新构建: {}", storeFile, e);
+                }
+            }
+
+            int batchSize = ragProperties.getWarmup() == RagProperties.Warmup.ASYNC
+                    ? Math.max(1, ragProperties.getWarmupBatchSize())
+                    : Math.max(1, documentList.size());
+            for (int from = 0; from < documentList.size(); from += batchSize) {
+                List<Document> batch = documentList.subList(from, Math.min(from + batchSize, documentList.size()));
+                // 并发补充关键词元信息并预先计算向量（命中缓存的切片不再调用远程模型）
+                vectorStore.add(documentIngestionPipeline.ingest(batch, embeddingModel));
+                indexedDocuments.addAndGet(batch.size());
+                eventPublisher.publishEvent(new VectorStoreReindexedEvent(indexedDocuments.get()));
+            }
+            embeddingCache.save();
+            snapshotSaver.accept(storeFile);
+            writeFingerprint(fingerprintFile, fingerprint);
+            state = State.READY;
+            log.info("向量库构建完成，文档数: {}，耗时: {} ms", documentList.size(), System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            state = State.FAILED;
+            log.error("向量库构建失败", e);
+            if (ragProperties.getWarmup() == RagProperties.Warmup.SYNC) {
+                throw e;
+            }
+        }
+    }
+
+    private static String readFingerprint(Path file) {
+        try {
+            return Files.exists(file) ? Files.readString(file, StandardCharsets.UTF_8).trim() : null;
+        } catch (IOException e) {
+            log.warn("读取语料指纹失败", e);
+            return null;
+        }
+    }
+
+    private static void writeFingerprint(Path file, String fingerprint) {
+        try {
+            Files.writeString(file, fingerprint, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.warn("写入语料指纹失败", e);
+        }
+    }
+}
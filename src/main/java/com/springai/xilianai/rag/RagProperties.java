@@ -0,0 +1,211 @@
+package com.springai.xilianai.rag;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 知识库（RAG）配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "xilian.rag")
+public class RagProperties {
+
+    /**
+     * 向量、关键词缓存和向量库快照的保存目录
+     */
+    private String cacheDir = System.getProperty("user.dir") + "/tmp/rag-cache";
+
+    /**
+     * 向量库实现：simple（Spring AI 的暴力检索 SimpleVectorStore）或 hnsw（进程内近似最近邻索引）
+     */
+    private StoreType store = StoreType.SIMPLE;
+
+    private Hnsw hnsw = new Hnsw();
+
+    /**
+     * 向量库建索引方式：同步（启动时建完）或异步（启动后在后台建）
+     */
+    private Warmup warmup = Warmup.ASYNC;
+
+    /**
+     * 异步建索引期间对话如何使用知识库
+     */
+    private UnreadyMode unreadyMode = UnreadyMode.PARTIAL;
+
+    /**
+     * 异步建索引时每批入库的文档数，每批完成后即可被检索
+     */
+    private int warmupBatchSize = 20;
+
+    private Ingestion ingestion = new Ingestion();
+
+    private Retrieval retrieval = new Retrieval();
+
+    private Hybrid hybrid = new Hybrid();
+
+    public enum StoreType {
+        SIMPLE,
+        HNSW
+    }
+
+    /**
+     * HNSW 索引参数
+     */
+    @Data
+    public static class Hnsw {
+        /**
+         * 每个节点在上层的最大邻居数（第 0 层为 2M）
+         */
+        private int m = 16;
+
+        /**
+         * 建图时的候选集大小
+         */
+        private int efConstruction = 200;
+
+        /**
+         * 查询时的候选集大小，越大召回越高、越慢
+         */
+        private int efSearch = 64;
+
+        /**
+         * 向量放在哪里：heap（堆内 float 数组）或 off-heap（内存映射文件 + 直接内存，不占用堆）
+         */
+        private VectorStorageType vectorStorage = VectorStorageType.HEAP;
+
+        /**
+         * 堆外存储时的向量量化方式：none / int8 / binary
+         */
+        private Quantization quantization = Quantization.NONE;
+
+        /**
+         * 量化检索时多取的候选倍数，取回后用原始向量重新打分
+         */
+        private int rescoreFactor = 4;
+    }
+
+    public enum VectorStorageType {
+        HEAP,
+        OFF_HEAP
+    }
+
+    public enum Quantization {
+        /**
+         * 不量化，直接在原始 float 向量上计算
+         */
+        NONE,
+        /**
+         * 每维量化为一个有符号字节，约为原始大小的 1/4
+         */
+        INT8,
+        /**
+         * 每维只保留符号位，约为原始大小的 1/32
+         */
+        BINARY
+    }
+
+    public enum Warmup {
+        SYNC,
+        ASYNC
+    }
+
+    public enum UnreadyMode {
+        /**
+         * 索引未就绪时不做检索增强
+         */
+        SKIP,
+        /**
+         * 索引未就绪时检索已经入库的部分文档
+         */
+        PARTIAL
+    }
+
+    /**
+     * 文档入库流水线（关键词增强 + 向量化）
+     */
+    @Data
+    public static class Ingestion {
+        /**
+         * 同时进行的远程调用数
+         */
+        private int concurrency = 4;
+
+        /**
+         * 每分钟允许发送的 token 数（按文本估算）
+         */
+        private int tokensPerMinute = 100_000;
+
+        /**
+         * 每次向量化请求的文本条数
+         */
+        private int embeddingBatchSize = 10;
+
+        /**
+         * 单个任务失败后的最大重试次数
+         */
+        private int maxRetries = 3;
+
+        /**
+         * 首次重试前的等待时间，之后每次翻倍
+         */
+        private Duration initialBackoff = Duration.ofSeconds(1);
+    }
+
+    /**
+     * 检索增强的缓存
+     */
+    @Data
+    public static class Retrieval {
+        /**
+         * 问题向量缓存的最大条数（LRU）
+         */
+        private int queryEmbeddingCacheSize = 2000;
+
+        /**
+         * 检索结果缓存的最大条数
+         */
+        private int resultCacheSize = 500;
+
+        /**
+         * 检索结果缓存的有效期
+         */
+        private Duration resultCacheTtl = Duration.ofSeconds(60);
+
+        /**
+         * 问题向量的余弦相似度不低于该值时复用检索结果
+         */
+        private double resultCacheSimilarity = 0.99;
+    }
+
+    /**
+     * 混合检索（向量 + BM25 关键词，倒数排名融合）
+     */
+    @Data
+    public static class Hybrid {
+        private boolean enabled = true;
+
+        /**
+         * 倒数排名融合公式 1 / (k + rank) 中的 k
+         */
+        private int rrfK = 60;
+
+        /**
+         * 关键词检索取回的候选数
+         */
+        private int lexicalCandidates = 10;
+
+        /**
+         * 向量检索取回的候选数，0 表示与请求的 topK 相同
+         */
+        private int vectorCandidates = 0;
+
+        /**
+         * 关键词命中参与融合的最低 BM25 分数；只命中常见单字的文档分数很低，会被挡在外面
+         */
+        private double lexicalMinScore = 1.0;
+    }
+}
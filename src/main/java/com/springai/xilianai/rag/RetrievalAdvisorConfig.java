@@ -0,0 +1,37 @@
+package com.springai.xilianai.rag;
+
+import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 检索增强 Advisor：全局只有一个实例，检索经过问题向量缓存和检索结果缓存；检索内容使用精简的中文模板拼接
+ */
+@Configuration
+public class RetrievalAdvisorConfig {
+
+    /**
+     * 检索内容拼接在本轮问题之后，人设和对话记忆在前面保持不变
+     */
+    private static final String RAG_PROMPT_TEMPLATE = """
+            {query}
+
+            以下是从角色设定资料中检索到的内容：
+            ---------------------
+            {question_answer_context}
+            ---------------------
+            请结合以上资料和对话历史回答，资料中没有的设定不要编造。
+            """;
+
+    @Bean
+    public QuestionAnswerAdvisor loveAppRagAdvisor(VectorStore loveAppVectorStore,
+                                                   QueryEmbeddingCache queryEmbeddingCache,
+                                                   RetrievalResultCache retrievalResultCache) {
+        return QuestionAnswerAdvisor.builder(
+                        new CachingRetrievalVectorStore(loveAppVectorStore, queryEmbeddingCache, retrievalResultCache))
+                .promptTemplate(new PromptTemplate(RAG_PROMPT_TEMPLATE))
+                .build();
+    }
+}
@@ -0,0 +1,115 @@
+package com.springai.xilianai.rag;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 检索结果缓存：问题向量 -> top-k 文档，短有效期
+ * <p>
+ * 检索参数（topK、相似度阈值、过滤条件）相同且问题向量足够接近时直接返回上次的检索结果。
+ * 向量库内容变化时（{@link VectorStoreReindexedEvent}）整体失效。
+ */
+@Component
+@Slf4j
+public class RetrievalResultCache {
+
+    private final RagProperties.Retrieval properties;
+    /**
+     * 按写入顺序排列，最早写入的在队首
+     */
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    /**
+     * 每次失效加一；检索开始前记下的代数与写入时不一致，说明检索期间向量库变过，结果不再缓存
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public RetrievalResultCache(RagProperties ragProperties, MeterRegistry meterRegistry) {
+        this.properties = ragProperties.getRetrieval();
+        this.hitCounter = meterRegistry.counter("xilian.rag.retrieval.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("xilian.rag.retrieval.cache", "result", "miss");
+        meterRegistry.gauge("xilian.rag.retrieval.cache.size", entries, cache -> size());
+    }
+
+    /**
+     * 查找与问题向量（已归一化）足够接近、检索参数相同的缓存结果，未命中返回 null
+     */
+    public List<Document> get(float[] embedding, SearchRequest request) {
+        String signature = signature(request);
+        long now = System.currentTimeMillis();
+        long ttlMillis = properties.getResultCacheTtl().toMillis();
+        synchronized (entries) {
+            // 有效期相同，过期的条目都在队首
+            while (!entries.isEmpty() && now - entries.peekFirst().createdAt() > ttlMillis) {
+                entries.pollFirst();
+            }
+            Iterator<Entry> iterator = entries.descendingIterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.signature().equals(signature)
+                        && Vectors.dot(embedding, entry.embedding()) >= properties.getResultCacheSimilarity()) {
+                    hitCounter.increment();
+                    return entry.documents();
+                }
+            }
+        }
+        missCounter.increment();
+        return null;
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * @param generation 检索开始前通过 {@link #generation()} 取得的代数
+     */
+    public void put(float[] embedding, SearchRequest request, List<Document> documents, long generation) {
+        synchronized (entries) {
+            if (generation != this.generation.get()) {
+                return;
+            }
+            entries.addLast(new Entry(signature(request), embedding, List.copyOf(documents),
+                    System.currentTimeMillis()));
+            while (entries.size() > properties.getResultCacheSize()) {
+                entries.pollFirst();
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @EventListener
+    public void onReindexed(VectorStoreReindexedEvent event) {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.clear();
+        }
+        log.debug("向量库内容变化（已入库 {} 篇），检索结果缓存已清空", event.indexedDocuments());
+    }
+
+    private static String signature(SearchRequest request) {
+        return request.getTopK() + "|" + request.getSimilarityThreshold() + "|"
+                + Objects.toString(request.getFilterExpression(), "");
+    }
+
+    private record Entry(String signature, float[] embedding, List<Document> documents, long createdAt) {
+    }
+}
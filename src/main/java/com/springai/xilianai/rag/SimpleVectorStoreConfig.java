@@ -1,38 +1,90 @@
 package com.springai.xilianai.rag;
 
 import jakarta.annotation.Resource;
-import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.List;
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 /**
  * 初始化基于内存的向量数据库配置 Bean
+ * <p>
+ * 根据 {@code xilian.rag.store} 选择 SimpleVectorStore 或进程内的 HNSW 索引，
+ * HNSW 的向量可以放在堆内，也可以放在堆外并做 int8 / 二值量化（{@code xilian.rag.hnsw.vector-storage}）。
+ * 开启混合检索时外面再包一层 {@link HybridVectorStore}，与 BM25 关键词检索融合。
+ * 向量库的填充由 {@link RagIndexManager} 负责，异步模式下应用启动时向量库还是空的，在后台逐批填充。
  */
 @Configuration
 public class SimpleVectorStoreConfig {
+
+    @Resource
+    private EmbeddingCache embeddingCache;
+
     @Resource
-    private DocumentLoader documentLoader;
+    private QueryEmbeddingCache queryEmbeddingCache;
 
     @Resource
-    private TokenTextSplitter tokenTextSplitter;
+    private RagIndexManager ragIndexManager;
 
     @Resource
-    private KeywordEnricher keywordEnricher;
+    private RagProperties ragProperties;
 
     @Bean
     VectorStore loveAppVectorStore(EmbeddingModel dashscopeEmbeddingModel) {
-        org.springframework.ai.vectorstore.SimpleVectorStore simpleVectorStore = org.springframework.ai.vectorstore.SimpleVectorStore.builder(dashscopeEmbeddingModel).build();
-        // 加载文档
-        List<Document> documentList = documentLoader.loadMarkdowns();
-        // 自主切分文档
-//        List<Document> splitDocuments = tokenTextSplitter.splitCustomized(documentList);
-        // 自动补充关键词元信息
-        List<Document> enrichedDocuments = keywordEnricher.enrichDocuments(documentList);
-        simpleVectorStore.add(enrichedDocuments);
-        return simpleVectorStore;
+        // 检索用：用户问题不写入磁盘缓存
+        CachingEmbeddingModel embeddingModel = new CachingEmbeddingModel(dashscopeEmbeddingModel, embeddingCache,
+                queryEmbeddingCache, false);
+        // 建索引用：切片向量写入磁盘缓存
+        CachingEmbeddingModel indexingEmbeddingModel = new CachingEmbeddingModel(dashscopeEmbeddingModel,
+                embeddingCache, queryEmbeddingCache, true);
+        VectorStore vectorStore;
+        String snapshotName;
+        Consumer<File> snapshotSaver;
+        Consumer<File> snapshotLoader;
+        if (ragProperties.getStore() == RagProperties.StoreType.HNSW) {
+            RagProperties.Hnsw hnsw = ragProperties.getHnsw();
+            HnswVectorStore hnswVectorStore = new HnswVectorStore(embeddingModel,
+                    hnsw.getM(), hnsw.getEfConstruction(), hnsw.getEfSearch(),
+                    vectorStorageFactory(hnsw), hnsw.getRescoreFactor());
+            vectorStore = hnswVectorStore;
+            snapshotName = "vector-store.hnsw";
+            snapshotSaver = hnswVectorStore::save;
+            snapshotLoader = hnswVectorStore::load;
+        } else {
+            SimpleVectorStore simpleVectorStore = SimpleVectorStore.builder(embeddingModel).build();
+            vectorStore = simpleVectorStore;
+            snapshotName = "vector-store.json";
+            snapshotSaver = simpleVectorStore::save;
+            snapshotLoader = simpleVectorStore::load;
+        }
+
+        RagProperties.Hybrid hybrid = ragProperties.getHybrid();
+        if (hybrid.isEnabled()) {
+            // 向量检索与关键词检索融合，关键词索引和向量库快照一起保存、加载
+            HybridVectorStore hybridVectorStore = new HybridVectorStore(vectorStore,
+                    hybrid.getRrfK(), hybrid.getLexicalCandidates(), hybrid.getVectorCandidates(),
+                    hybrid.getLexicalMinScore());
+            vectorStore = hybridVectorStore;
+            snapshotSaver = snapshotSaver.andThen(hybridVectorStore::saveLexicalIndex);
+            snapshotLoader = snapshotLoader.andThen(hybridVectorStore::loadLexicalIndex);
+        }
+        // 加载文档、补充关键词并写入向量库
+        ragIndexManager.initialize(vectorStore, indexingEmbeddingModel, snapshotName, snapshotSaver, snapshotLoader);
+        return vectorStore;
+    }
+
+    private IntFunction<VectorStorage> vectorStorageFactory(RagProperties.Hnsw hnsw) {
+        if (hnsw.getVectorStorage() == RagProperties.VectorStorageType.OFF_HEAP) {
+            Path directory = Paths.get(ragProperties.getCacheDir(), "vectors");
+            return dimensions -> new OffHeapVectorStorage(dimensions, hnsw.getQuantization(), directory);
+        }
+        return HeapVectorStorage::new;
     }
 }
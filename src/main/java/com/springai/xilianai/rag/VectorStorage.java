@@ -0,0 +1,64 @@
+package com.springai.xilianai.rag;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 向量存储：按节点编号保存归一化后的向量，并计算与查询向量的相似度（点积）
+ */
+interface VectorStorage {
+
+    int dimensions();
+
+    int size();
+
+    /**
+     * 追加一条（已归一化的）向量，返回节点编号
+     */
+    int add(float[] vector);
+
+    /**
+     * 查询向量与节点向量的点积（向量都已归一化，即余弦相似度）；量化存储返回的是近似值
+     */
+    float similarity(float[] query, int node);
+
+    /**
+     * 查询向量与节点原始向量的精确点积，用于对近似结果重新打分
+     */
+    default float exactSimilarity(float[] query, int node) {
+        return similarity(query, node);
+    }
+
+    /**
+     * {@link #similarity(float[], int)} 是否是近似值（需要重新打分）
+     */
+    default boolean approximate() {
+        return false;
+    }
+
+    /**
+     * 两个节点之间的点积
+     */
+    float similarity(int a, int b);
+
+    /**
+     * 占用的堆内存字节数（估算）
+     */
+    long heapBytes();
+
+    /**
+     * 占用的堆外内存字节数（直接内存 + 内存映射文件）
+     */
+    long offHeapBytes();
+
+    /**
+     * 按节点顺序写出原始 float 向量（大端），量化存储同样写出原始向量
+     */
+    void writeTo(DataOutput out) throws IOException;
+
+    /**
+     * 释放堆外资源
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,9 @@
+package com.springai.xilianai.rag;
+
+/**
+ * 向量库内容发生变化（一批文档入库、加载快照）时发布的事件，依赖检索结果的缓存收到后应失效
+ *
+ * @param indexedDocuments 当前已入库的文档数
+ */
+public record VectorStoreReindexedEvent(int indexedDocuments) {
+}
@@ -0,0 +1,43 @@
+package com.springai.xilianai.rag;
+
+/**
+ * 向量运算：向量库、检索结果缓存和语义缓存共用，保证各处按同样的方式归一化、计算相似度
+ */
+public final class Vectors {
+
+    private Vectors() {
+    }
+
+    /**
+     * 归一化为单位向量，返回新数组；零向量返回同样长度的零向量
+     */
+    public static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    /**
+     * 点积（两个向量都已归一化时即余弦相似度）；维度不同时返回 0
+     */
+    public static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
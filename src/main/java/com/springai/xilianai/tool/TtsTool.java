@@ -1,61 +1,94 @@
 package com.springai.xilianai.tool;
 
+import com.springai.xilianai.util.TtsAudioCache;
+import com.springai.xilianai.util.TtsGateway;
+import com.springai.xilianai.util.TtsSynthesisRequest;
+import com.springai.xilianai.util.VoiceProfiles;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
-import org.springframework.http.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Flux;
 
+import java.time.Duration;
 import java.util.Base64;
-import java.util.HashMap;
-import java.util.Map;
 
 @Component
 @Slf4j
 public class TtsTool {
 
-
-    private final RestTemplate restTemplate = new RestTemplate();
-    //调用tts的端口
-    private final String apiBaseUrl="http://127.0.0.1:9880";
-    //需要仓靠音频路径
-    private final String defaultRefAudioPath="";
-
-    private final String defaultTextLang="zh";
-
-    private final String defaultPromptLang="zh";
+    /**
+     * 不启用合成缓存时，同步等待合成结果的最长时间
+     */
+    private static final Duration BLOCKING_TIMEOUT = Duration.ofSeconds(60);
+
+    private final TtsGateway gateway;
+    private final TtsAudioCache audioCache;
+    private final VoiceProfiles voiceProfiles;
+    private final String contextPath;
+
+    public TtsTool(TtsGateway gateway, TtsAudioCache audioCache, VoiceProfiles voiceProfiles,
+                   @Value("${server.servlet.context-path:}") String contextPath) {
+        this.gateway = gateway;
+        this.audioCache = audioCache;
+        this.voiceProfiles = voiceProfiles;
+        this.contextPath = contextPath;
+    }
 
     /**
-     * 文本转语音 - 使用默认参数
+     * 文本转语音 - 使用默认音色
      */
     public String textToSpeech(String text) {
-        return textToSpeech(text, defaultTextLang, defaultRefAudioPath, defaultPromptLang);
+        return textToSpeech(text, null, null);
     }
 
     /**
      * 文本转语音 - 完整参数版本
+     * <p>
+     * 只发起合成、立即返回音频地址，不阻塞模型的工具调用线程等待合成；前端请求该地址时边合成边返回（见 TtsController）。
+     * 不启用合成缓存时无法按地址取回音频，退回到同步合成并返回 data URL。
      */
     @Tool(description = "将文本转换为语音。当用户请求语音回复、或需要听一段文字时使用此工具。")
     public String textToSpeech(
             @ToolParam(description = "需要转换为语音的文本内容") String text,
-            @ToolParam(description = "文本的语言，例如：zh（中文）、en（英文）") String textLang,
-            @ToolParam(description = "参考音频文件的本地路径，用于指定声音特征") String refAudioPath,
-            @ToolParam(description = "参考音频的语言") String promptLang) {
+            @ToolParam(description = "音色名称，不指定时使用默认音色", required = false) String voice,
+            @ToolParam(description = "文本的语言，例如：zh（中文）、en（英文），不指定时使用音色的默认语言",
+                    required = false) String textLang) {
 
         log.info("开始TTS转换，文本长度: {} 字符", text.length());
+        if (text.length() > 500) {
+            log.warn("文本长度超过500字符，可能会影响合成效果，建议分段处理");
+        }
 
         try {
-            // 1. 调用GPT-SOVITS API
-            byte[] audioBytes = callGptSovitsApi(text, textLang, refAudioPath, promptLang);
-
-            // 2. 将音频字节数组转换为Base64编码的Data URL
-            String base64Audio = Base64.getEncoder().encodeToString(audioBytes);
-            String audioDataUrl = "data:audio/wav;base64," + base64Audio;
+            TtsSynthesisRequest requestBody = new TtsSynthesisRequest(voiceProfiles.get(voice), text, textLang,
+                    null, 1, false);
+            Flux<DataBuffer> audio = callGptSovitsApi(requestBody);
+
+            if (audioCache.isEnabled()) {
+                // 订阅即发起合成，结果进入缓存，按 key 取回；音频不在缓存中时按记住的请求重新合成
+                audio.subscribe(DataBufferUtils::release, e -> log.error("TTS转换失败: {}", e.getMessage(), e));
+                String audioUrl = contextPath + "/tts/audio/" + audioCache.link(requestBody);
+                log.info("TTS转换已提交，音频地址: {}", audioUrl);
+                return audioUrl;
+            }
 
+            byte[] audioBytes = DataBufferUtils.join(audio)
+                    .map(buffer -> {
+                        try {
+                            byte[] bytes = new byte[buffer.readableByteCount()];
+                            buffer.read(bytes);
+                            return bytes;
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                    })
+                    .block(BLOCKING_TIMEOUT);
             log.info("TTS转换成功，音频数据大小: {} bytes", audioBytes.length);
-            return audioDataUrl;
+            return "data:audio/wav;base64," + Base64.getEncoder().encodeToString(audioBytes);
 
         } catch (Exception e) {
             log.error("TTS转换失败: {}", e.getMessage(), e);
@@ -65,57 +98,11 @@ public class TtsTool {
     }
 
     /**
-     * 调用GPT-SOVITS API的核心方法
+     * 调用GPT-SOVITS API的核心方法：先查合成缓存，未命中时经 TTS 网关排队调用（批量优先级），响应按块流式读取
      */
-    private byte[] callGptSovitsApi(String text, String textLang, String refAudioPath, String promptLang) {
-        String apiUrl = apiBaseUrl + "/tts";
-
-        // 1. 设置请求头
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.set("User-Agent", "SpringAI-TTS-Client/1.0");
-
-        // 2. 构建请求体
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("text", text);
-        requestBody.put("text_lang", textLang);
-        requestBody.put("ref_audio_path", refAudioPath);
-        requestBody.put("prompt_lang", promptLang);
-        requestBody.put("prompt_text", "");
-        requestBody.put("top_k", 5);
-        requestBody.put("top_p", 1.0);
-        requestBody.put("temperature", 1.0);
-        requestBody.put("speed_factor", 1.0);
-
-        // 3. 处理长文本（GPT-SOVITS可能有长度限制）
-        if (text.length() > 500) {
-            log.warn("文本长度超过500字符，可能会影响合成效果，建议分段处理");
-            // 如果需要，这里可以添加文本分段逻辑
-        }
-
-        // 4. 发送请求
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-
-        try {
-            log.debug("调用GPT-SOVITS API: {}", apiUrl);
-            ResponseEntity<byte[]> response = restTemplate.exchange(
-                    apiUrl,
-                    HttpMethod.POST,
-                    entity,
-                    byte[].class
-            );
-
-            // 5. 检查响应
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                return response.getBody();
-            } else {
-                throw new RuntimeException("TTS API返回错误状态: " + response.getStatusCode());
-            }
-
-        } catch (HttpClientErrorException e) {
-            throw new RuntimeException("TTS API调用失败: " + e.getStatusCode() + " - " + e.getResponseBodyAsString(), e);
-        } catch (Exception e) {
-            throw new RuntimeException("TTS API调用异常: " + e.getMessage(), e);
-        }
+    private Flux<DataBuffer> callGptSovitsApi(TtsSynthesisRequest requestBody) {
+        return audioCache.getOrSynthesize(requestBody, () -> gateway
+                .synthesize(requestBody, TtsGateway.Priority.BATCH)
+                .doOnSubscribe(subscription -> log.debug("调用GPT-SOVITS API: /tts")));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,146 @@
+package com.springai.xilianai.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按会话归档合成的音频，前端回放历史消息时直接读取归档，不需要重新合成
+ * <p>
+ * 每个会话一个目录（{@code audio-data_<chatId>}），每次合成一个 wav 文件，目录下的 {@code index.jsonl}
+ * 逐行记录文件名、原文、大小和时间；只有完整写完的音频才写入索引，失败或取消时删除写了一半的文件。
+ */
+@Slf4j
+@Component
+public class AudioArchive {
+
+    private static final String INDEX_FILE = "index.jsonl";
+
+    private final Path baseDir = Paths.get(System.getProperty("user.dir"), "tmp", "audio-data");
+    private final ObjectMapper objectMapper;
+
+    public AudioArchive(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 归档中的一条音频
+     */
+    public record Entry(String file, String text, long bytes, long createdAt) {
+    }
+
+    /**
+     * 把音频流同时写入归档：只订阅一次上游，每块先异步写入文件再交给下游（文件写入不占用线程，同一时刻只有一块在写），
+     * 下游照常负责释放；流结束、出错或取消时都会关闭文件
+     */
+    public Flux<DataBuffer> tee(String chatId, String text, Flux<DataBuffer> audio) {
+        return Flux.defer(() -> {
+            Path dir = chatDir(chatId);
+            long createdAt = System.currentTimeMillis();
+            String fileName = "audio_" + createdAt + "_" + Long.toHexString(System.nanoTime()) + ".wav";
+            Path file = dir.resolve(fileName);
+            AtomicLong written = new AtomicLong();
+            return Flux.using(
+                            () -> {
+                                Files.createDirectories(dir);
+                                return AsynchronousFileChannel.open(file, StandardOpenOption.WRITE,
+                                        StandardOpenOption.CREATE_NEW);
+                            },
+                            channel -> DataBufferUtils.write(audio, channel)
+                                    .doOnNext(buffer -> written.addAndGet(buffer.readableByteCount())),
+                            this::closeQuietly)
+                    .doFinally(signal -> {
+                        if (signal == SignalType.ON_COMPLETE && written.get() > 0) {
+                            appendIndex(dir, new Entry(fileName, text, written.get(), createdAt));
+                            log.info("音频已归档: {}", file);
+                        } else {
+                            deleteQuietly(file);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 会话的归档列表，按合成时间从早到晚
+     */
+    public List<Entry> list(String chatId) {
+        Path index = chatDir(chatId).resolve(INDEX_FILE);
+        if (!Files.exists(index)) {
+            return List.of();
+        }
+        List<Entry> entries = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    entries.add(objectMapper.readValue(line, Entry.class));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取音频归档索引失败: " + index, e);
+        }
+        return entries;
+    }
+
+    /**
+     * 归档中的音频文件，只能取得索引中登记过的文件
+     */
+    public Optional<Path> find(String chatId, String fileName) {
+        return list(chatId).stream()
+                .filter(entry -> entry.file().equals(fileName))
+                .map(entry -> chatDir(chatId).resolve(entry.file()))
+                .filter(Files::exists)
+                .findFirst();
+    }
+
+    private synchronized void appendIndex(Path dir, Entry entry) {
+        try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve(INDEX_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(objectMapper.writeValueAsString(entry));
+            writer.newLine();
+        } catch (IOException e) {
+            log.error("写入音频归档索引失败: {}", dir, e);
+        }
+    }
+
+    /**
+     * chatId 来自请求参数，只保留安全字符，避免跳出归档目录
+     */
+    private Path chatDir(String chatId) {
+        String safe = chatId == null || chatId.isBlank() ? "default" : chatId.replaceAll("[^A-Za-z0-9_-]", "_");
+        return baseDir.resolve("audio-data_" + safe);
+    }
+
+    private void closeQuietly(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("关闭音频文件失败", e);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("删除未完成的音频文件失败: {}", file, e);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.springai.xilianai.util;
 
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -9,13 +10,14 @@ import java.util.regex.Pattern;
 @Component
 public class SentenceSegmenter {
     
-    // 中文标点：。！？；，、
-    // 英文标点：.!?;,
-    private static final Pattern SENTENCE_END_PATTERN = 
-        Pattern.compile("([。！？.!?])(?![^\\{<\\[（(]*[\\}>\\])）)])");
-    
     private static final Pattern PAUSE_PATTERN = 
         Pattern.compile("([，,；;])\\s*");
+
+    private final TtsProperties.Segmenter properties;
+
+    public SentenceSegmenter(TtsProperties ttsProperties) {
+        this.properties = ttsProperties.getSegmenter();
+    }
     
     /**
      * 智能分割文本为句子
@@ -29,33 +31,27 @@ public class SentenceSegmenter {
             return sentences;
         }
         
-        // 使用正则表达式找到句子边界
-        String[] parts = SENTENCE_END_PATTERN.split(text);
-        
-        // 重建句子（包括标点）
-        int startIndex = 0;
-        java.util.regex.Matcher matcher = SENTENCE_END_PATTERN.matcher(text);
-        
-        while (matcher.find()) {
-            int endIndex = matcher.end();
-            String sentence = text.substring(startIndex, endIndex).trim();
-            if (!sentence.isEmpty()) {
-                sentences.add(sentence);
-            }
-            startIndex = endIndex;
-        }
-        
-        // 处理最后一段（可能没有结束标点）
-        if (startIndex < text.length()) {
-            String lastPart = text.substring(startIndex).trim();
-            if (!lastPart.isEmpty()) {
-                sentences.add(lastPart);
-            }
-        }
-        
+        StreamingSentenceSplitter splitter = newStream();
+        splitter.accept(text, sentences::add);
+        splitter.flush(sentences::add);
         return sentences;
     }
     
+    /**
+     * 为一条文本流创建分句器（按配置的最小、最大句长和停顿时长）
+     */
+    public StreamingSentenceSplitter newStream() {
+        return new StreamingSentenceSplitter(properties.getMinLength(), properties.getMaxLength(),
+                properties.getFlushTimeout().toNanos());
+    }
+
+    /**
+     * 停顿检查的间隔
+     */
+    public Duration flushTimeout() {
+        return properties.getFlushTimeout();
+    }
+
     /**
      * 是否需要立即合成（根据标点判断）
      */
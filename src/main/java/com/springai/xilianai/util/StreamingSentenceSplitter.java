@@ -0,0 +1,230 @@
+package com.springai.xilianai.util;
+
+import java.util.function.Consumer;
+
+/**
+ * 推送式流式分句器：大模型的文本块任意切分地推进来，确认到句子边界就立即输出整句
+ * <p>
+ * 手写扫描器，每个字符只扫描一次，不使用正则，也不为单个字符分配对象；只有输出句子时创建一个 String。
+ * <ul>
+ *     <li>中英文句末标点（。！？.!?），连续的句末标点和紧跟的右引号、右括号并入同一句</li>
+ *     <li>括号内的句末标点不断句，支持嵌套；尖括号不算括号（大模型输出里常有单独的 &lt; 或 &gt;，如 a&lt;b），
+ *     未闭合的括号最多影响到最大长度处的强制切分</li>
+ *     <li>英文句点后面紧跟字母或数字（小数、缩写）不断句；句末标点要等下一个字符到达才确认边界</li>
+ *     <li>少于最小长度的句子与下一句合并；超过最大长度时在最近的逗号、分号处强制切分</li>
+ *     <li>超过停顿时长没有新文本时，由 {@link #flushIfIdle} 把缓冲中的文本整段输出</li>
+ * </ul>
+ * 非线程安全，每条文本流使用一个实例。
+ */
+public class StreamingSentenceSplitter {
+
+    private final int minLength;
+    private final int maxLength;
+    private final long flushTimeoutNanos;
+
+    private char[] buffer = new char[256];
+    /**
+     * 缓冲区中的字符数
+     */
+    private int length;
+    /**
+     * 当前句子在缓冲区中的起点
+     */
+    private int start;
+    /**
+     * 下一个待扫描字符的位置
+     */
+    private int scan;
+    /**
+     * 括号嵌套深度
+     */
+    private int depth;
+    /**
+     * 待确认的句子边界（不含），-1 表示没有
+     */
+    private int boundary = -1;
+    /**
+     * 待确认的边界是否来自英文句点
+     */
+    private boolean boundaryDot;
+    /**
+     * 当前句子中最近一个停顿标点之后的位置，-1 表示没有
+     */
+    private int lastPause = -1;
+    private long lastInputNanos = System.nanoTime();
+
+    /**
+     * @param minLength         句子的最小字数
+     * @param maxLength         句子的最大字数
+     * @param flushTimeoutNanos 停顿多久后整段输出缓冲中的文本
+     */
+    public StreamingSentenceSplitter(int minLength, int maxLength, long flushTimeoutNanos) {
+        this.minLength = Math.max(1, minLength);
+        this.maxLength = Math.max(this.minLength, maxLength);
+        this.flushTimeoutNanos = flushTimeoutNanos;
+    }
+
+    /**
+     * 推入一段文本，已确认的句子依次交给 sink
+     */
+    public void accept(CharSequence chunk, Consumer<String> sink) {
+        lastInputNanos = System.nanoTime();
+        int count = chunk.length();
+        if (count == 0) {
+            return;
+        }
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            buffer[length + i] = chunk.charAt(i);
+        }
+        length += count;
+        scan(sink);
+    }
+
+    /**
+     * 文本流结束：缓冲中剩余的文本无论是否完整都作为最后一句输出
+     */
+    public void flush(Consumer<String> sink) {
+        emit(length, true, sink);
+        reset();
+    }
+
+    /**
+     * 距离上一次推入文本已超过停顿时长时，把缓冲中的文本整段输出
+     *
+     * @return 是否输出了文本
+     */
+    public boolean flushIfIdle(long nowNanos, Consumer<String> sink) {
+        if (length == start || nowNanos - lastInputNanos < flushTimeoutNanos) {
+            return false;
+        }
+        boolean emitted = emit(length, true, sink);
+        reset();
+        return emitted;
+    }
+
+    /**
+     * 缓冲中是否还有没有输出的文本
+     */
+    public boolean hasPending() {
+        return length > start;
+    }
+
+    private void scan(Consumer<String> sink) {
+        for (; scan < length; scan++) {
+            char c = buffer[scan];
+            if (boundary >= 0) {
+                if (isSentenceEnd(c) || isClosingQuote(c) || (isClosing(c) && depth == 0)) {
+                    // 连续的句末标点和右引号、右括号并入当前句
+                    boundary = scan + 1;
+                    boundaryDot = c == '.';
+                    continue;
+                }
+                if (boundaryDot && c < 128 && Character.isLetterOrDigit(c)) {
+                    // 3.14、e.g 之类不是句子边界
+                    boundary = -1;
+                } else {
+                    int end = boundary;
+                    boundary = -1;
+                    emit(end, false, sink);
+                }
+            }
+            if (isOpening(c)) {
+                depth++;
+            } else if (isClosing(c)) {
+                depth = Math.max(0, depth - 1);
+            } else if (depth == 0 && isSentenceEnd(c)) {
+                boundary = scan + 1;
+                boundaryDot = c == '.';
+            } else if (depth == 0 && isPause(c)) {
+                lastPause = scan + 1;
+            }
+            if (boundary < 0 && scan + 1 - start >= maxLength) {
+                emit(lastPause > start ? lastPause : scan + 1, true, sink);
+            }
+        }
+    }
+
+    /**
+     * 输出 [start, end) 之间的文本（去掉首尾空白）
+     *
+     * @param force 为 false 时不足最小长度的句子留在缓冲中与下一句合并
+     */
+    private boolean emit(int end, boolean force, Consumer<String> sink) {
+        int from = start;
+        int to = end;
+        while (from < to && Character.isWhitespace(buffer[from])) {
+            from++;
+        }
+        while (to > from && Character.isWhitespace(buffer[to - 1])) {
+            to--;
+        }
+        if (!force && to - from < minLength) {
+            return false;
+        }
+        start = end;
+        if (lastPause <= start) {
+            lastPause = -1;
+        }
+        if (to > from) {
+            sink.accept(new String(buffer, from, to - from));
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        length = 0;
+        start = 0;
+        scan = 0;
+        depth = 0;
+        boundary = -1;
+        lastPause = -1;
+    }
+
+    /**
+     * 保证能再放入 count 个字符：优先把已输出的部分移出缓冲区，不够再扩容
+     */
+    private void ensureCapacity(int count) {
+        if (length + count <= buffer.length) {
+            return;
+        }
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, length - start);
+            length -= start;
+            scan -= start;
+            if (boundary >= 0) {
+                boundary -= start;
+            }
+            if (lastPause >= 0) {
+                lastPause -= start;
+            }
+            start = 0;
+        }
+        if (length + count > buffer.length) {
+            char[] grown = new char[Math.max(buffer.length * 2, length + count)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return c == '。' || c == '！' || c == '？' || c == '.' || c == '!' || c == '?';
+    }
+
+    private static boolean isPause(char c) {
+        return c == '，' || c == ',' || c == '；' || c == ';' || c == '、';
+    }
+
+    private static boolean isOpening(char c) {
+        return c == '(' || c == '（' || c == '[' || c == '【' || c == '{' || c == '《';
+    }
+
+    private static boolean isClosing(char c) {
+        return c == ')' || c == '）' || c == ']' || c == '】' || c == '}' || c == '》';
+    }
+
+    private static boolean isClosingQuote(char c) {
+        return c == '”' || c == '’' || c == '」' || c == '』' || c == '"' || c == '\'';
+    }
+}
@@ -3,46 +3,44 @@ package com.springai.xilianai.util;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
-import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Base64;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 @Slf4j
 @Component
 public class StreamingTtsService {
     
-    private final WebClient webClient;
+    private final TtsGateway gateway;
     private final SentenceSegmenter segmenter;
+    private final TtsProperties properties;
+    private final TtsAudioCache audioCache;
+    private final TtsBackendPool backendPool;
+    private final VoiceProfiles voiceProfiles;
 
-    private final String apiBaseUrl="http://127.0.0.1:9880";
-    
-    public StreamingTtsService(SentenceSegmenter segmenter) {
+    public StreamingTtsService(TtsGateway gateway, SentenceSegmenter segmenter, TtsProperties properties,
+                               TtsAudioCache audioCache, TtsBackendPool backendPool,
+                               VoiceProfiles voiceProfiles) {
+        this.gateway = gateway;
         this.segmenter = segmenter;
-        this.webClient = WebClient.builder()
-            .baseUrl(apiBaseUrl)
-            .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(10 * 1024 * 1024))
-            .build();
+        this.properties = properties;
+        this.audioCache = audioCache;
+        this.backendPool = backendPool;
+        this.voiceProfiles = voiceProfiles;
     }
 
     /**
      * 流式TTS合成 - 整体合成版本
+     * <p>
+     * 兼容的 Base64 文本格式，供只能接收 SSE 文本的客户端使用；二进制通道请用 {@link #synthesizeAudio(String)}。
      */
     public Flux<String> synthesizeStreaming(String text) {
-        log.debug("开始整体TTS合成，文本长度: {}", text.length());
-
-        return webClient.post()
-                .uri("/tts")
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(createTtsRequest(text))
-                .retrieve()
-                .bodyToFlux(DataBuffer.class)
+        return synthesizeAudio(text)
                 .map(dataBuffer -> {
                     byte[] bytes = new byte[dataBuffer.readableByteCount()];
                     dataBuffer.read(bytes);
@@ -50,59 +48,117 @@ public class StreamingTtsService {
                     return Base64.getEncoder().encodeToString(bytes);
                 })
                 .map(base64 -> "AUDIO_CHUNK:" + base64)
-                .doOnSubscribe(s -> log.debug("开始接收TTS音频流"))
-                .doOnComplete(() -> log.debug("TTS音频流接收完成"))
-                .onErrorResume(e -> {
-                    log.error("TTS整体合成失败", e);
-                    return Flux.just("ERROR:TTS合成失败 - " + e.getMessage());
-                });
+                .onErrorResume(e -> Flux.just("ERROR:TTS合成失败 - " + e.getMessage()));
     }
-    
+
     /**
-     * 创建TTS请求体（使用你的参数）
+     * 流式TTS合成 - 原始音频
+     * <p>
+     * 先查 {@link TtsAudioCache}，未命中时调用 GPT-SoVITS；返回的 {@link DataBuffer} 不复制也不编码，订阅方写出后负责释放。
      */
-    private Map<String, Object> createTtsRequest(String text) {
-        Map<String, Object> request = new HashMap<>();
-        request.put("text", text);
-        request.put("text_lang", "zh");
-        request.put("ref_audio_path", "F:/GPT-SoVITS-v2pro-20250604/wav/xilian.wav");
-        request.put("prompt_lang", "zh");
-        request.put("prompt_text", "这片麦田可是我们的宝贝，不能随便踩进去哦。会把希望踩坏的。");
-        request.put("top_k", 5);
-        request.put("top_p", 1);
-        request.put("temperature", 1);
-        request.put("text_split_method", "cut5");
-        request.put("batch_size", 1);
-        request.put("batch_threshold", 0.75);
-        request.put("split_bucket", true);
-        request.put("speed_factor", 1);
-        request.put("fragment_interval", 0.3);
-        request.put("seed", -1);
-        request.put("media_type", "wav");
-        request.put("streaming_mode", false);  // 关键：启用流式
-        request.put("parallel_infer", true);
-        request.put("repetition_penalty", 1.35);
-        request.put("sample_steps", 32);
-        request.put("super_sampling", false);
-        request.put("overlap_length", 2);
-        request.put("min_chunk_length", 16);
-        return request;
+    public Flux<DataBuffer> synthesizeAudio(String text) {
+        // 边聊边播用默认音色，GPT-SoVITS 合成完整段再返回
+        TtsSynthesisRequest request = new TtsSynthesisRequest(voiceProfiles.defaultProfile(), text, null, null,
+                1, false);
+        return audioCache.getOrSynthesize(request, () -> {
+            log.debug("开始整体TTS合成，文本长度: {}", text.length());
+            // 边聊边播，在网关中优先于批量合成
+            return gateway.synthesize(request, TtsGateway.Priority.INTERACTIVE)
+                    .doOnSubscribe(s -> log.debug("开始接收TTS音频流"))
+                    .doOnComplete(() -> log.debug("TTS音频流接收完成"))
+                    .doOnError(e -> log.error("TTS整体合成失败", e));
+        });
     }
     
+    /**
+     * 边生成边合成：大模型的文本块流入时逐句切分，每凑齐一个完整句子立即合成，
+     * 文本段和对应的音频按句子顺序交替输出，第一句的音频在大模型还在生成时就可以播放
+     *
+     * @param tokens 大模型输出的文本块
+     */
+    public Flux<String> synthesizeTokenStream(Flux<String> tokens) {
+        return synthesizeTokenStreamEvents(tokens).map(VoiceEvent::toSseData);
+    }
+
+    /**
+     * 同 {@link #synthesizeTokenStream(Flux)}，音频保持为原始 {@link DataBuffer}，供二进制通道直接写出
+     */
+    public Flux<VoiceEvent> synthesizeTokenStreamEvents(Flux<String> tokens) {
+        return synthesizeInOrder(splitTokenStream(tokens))
+                .concatWith(Mono.just(VoiceEvent.end()));
+    }
+
+    /**
+     * 按句子合成：最多同时合成配置数量的句子，后面的句子不必等前一句合成完才发请求；
+     * 输出仍严格按句子顺序，先完成的后续句子音频先缓存，前面的句子输出完后再输出
+     */
+    private Flux<VoiceEvent> synthesizeInOrder(Flux<String> sentences) {
+        return sentences.index()
+                .flatMapSequential(indexed -> {
+                            int sentence = indexed.getT1().intValue();
+                            return Flux.concat(
+                                    Mono.just(VoiceEvent.text(sentence, indexed.getT2())),
+                                    synthesizeAudio(indexed.getT2())
+                                            .map(audio -> VoiceEvent.audio(sentence, audio))
+                                            .onErrorResume(e -> Mono.just(
+                                                    VoiceEvent.error(sentence, "TTS合成失败 - " + e.getMessage())))
+                            );
+                        },
+                        synthesisConcurrency(),
+                        Math.max(1, properties.getSynthesisPrefetch()))
+                // 取消时丢弃的已缓冲音频要释放
+                .doOnDiscard(VoiceEvent.class, VoiceEvent::release);
+    }
+
+    /**
+     * 同时合成的句子数：每个 TTS 进程 synthesisConcurrency 句，句子分散到各个进程，吞吐随进程数增加
+     */
+    private int synthesisConcurrency() {
+        return Math.max(1, properties.getSynthesisConcurrency()) * backendPool.size();
+    }
+
+    /**
+     * 把文本块流切成句子流：确认到句子边界立即输出；大模型停顿超过配置的时长时，把已收到的文本整段输出
+     */
+    private Flux<String> splitTokenStream(Flux<String> tokens) {
+        Duration flushTimeout = segmenter.flushTimeout();
+        return Flux.create(sink -> {
+            StreamingSentenceSplitter splitter = segmenter.newStream();
+            // 文本块和停顿检查来自不同线程，对分句器的访问加锁
+            Disposable idle = Flux.interval(flushTimeout, flushTimeout)
+                    .subscribe(tick -> {
+                        synchronized (splitter) {
+                            splitter.flushIfIdle(System.nanoTime(), sink::next);
+                        }
+                    });
+            Disposable upstream = tokens.subscribe(
+                    chunk -> {
+                        synchronized (splitter) {
+                            splitter.accept(chunk, sink::next);
+                        }
+                    },
+                    sink::error,
+                    () -> {
+                        synchronized (splitter) {
+                            splitter.flush(sink::next);
+                        }
+                        sink.complete();
+                    });
+            sink.onDispose(() -> {
+                idle.dispose();
+                upstream.dispose();
+            });
+        });
+    }
+
     /**
      * 分段合成：将长文本分割后分别合成
      */
     public Flux<String> synthesizeSegmented(String longText) {
         List<String> sentences = segmenter.segmentIntoSentences(longText);
         
-        return Flux.fromIterable(sentences)
-            .concatMap(sentence -> {
-                // 对于每个句子，返回一个Flux
-                return Flux.concat(
-                    Mono.just("TEXT_SEGMENT:" + sentence),
-                    synthesizeStreaming(sentence)
-                );
-            })
-            .concatWith(Mono.just("AUDIO_END")); // 音频结束标记
+        return synthesizeInOrder(Flux.fromIterable(sentences))
+            .concatWith(Mono.just(VoiceEvent.end())) // 音频结束标记
+            .map(VoiceEvent::toSseData);
     }
 }
\ No newline at end of file
@@ -0,0 +1,378 @@
+package com.springai.xilianai.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * 合成音频缓存：按“规范化文本 + 全部合成参数”的哈希寻址
+ * <p>
+ * 问候语、口头禅、前端回放历史消息时会反复合成相同的句子，而合成是整条链路里最慢的一步。
+ * <ul>
+ *     <li>内存层：按音频字节数限制总大小的 LRU，保存合成时收到的音频块</li>
+ *     <li>磁盘层：每条音频一个文件，命中时只读映射后切片返回，数据由操作系统页缓存管理；按总大小淘汰最久没有使用的文件</li>
+ *     <li>同一个 key 正在合成时，后来的请求复用同一次合成（已收到的块先回放，之后随合成进度输出），不重复调用 GPT-SoVITS</li>
+ *     <li>按 key 发出的音频地址（{@link #link}）记住合成参数，音频被淘汰或没能进入缓存时按地址重新合成</li>
+ * </ul>
+ * 返回的 {@link DataBuffer} 直接包装缓存中的字节（不复制），释放是空操作。
+ * 发起合成的请求中途取消时合成仍会继续完成并写入缓存。
+ */
+@Slf4j
+@Component
+public class TtsAudioCache {
+
+    private static final String SUFFIX = ".wav";
+
+    /**
+     * 磁盘命中时每个切片的大小
+     */
+    private static final int DISK_SLICE_BYTES = 64 * 1024;
+
+    private static final DefaultDataBufferFactory BUFFER_FACTORY = DefaultDataBufferFactory.sharedInstance;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+
+    private final LinkedHashMap<String, List<byte[]>> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes;
+    private final Map<String, Flux<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, TtsSynthesisRequest> issued = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxIssuedLinks;
+
+    private final Counter memoryHitCounter;
+    private final Counter diskHitCounter;
+    private final Counter coalescedCounter;
+    private final Counter missCounter;
+
+    public TtsAudioCache(TtsProperties properties, MeterRegistry meterRegistry) {
+        TtsProperties.Cache cache = properties.getCache();
+        this.enabled = cache.isEnabled();
+        this.dir = Paths.get(cache.getDir());
+        this.maxMemoryBytes = cache.getMaxMemorySize().toBytes();
+        this.maxDiskBytes = cache.getMaxDiskSize().toBytes();
+        this.maxIssuedLinks = cache.getMaxIssuedLinks();
+        this.memoryHitCounter = meterRegistry.counter("xilian.tts.cache", "result", "memory");
+        this.diskHitCounter = meterRegistry.counter("xilian.tts.cache", "result", "disk");
+        this.coalescedCounter = meterRegistry.counter("xilian.tts.cache", "result", "coalesced");
+        this.missCounter = meterRegistry.counter("xilian.tts.cache", "result", "miss");
+        meterRegistry.gauge("xilian.tts.cache.memory.bytes", this, c -> c.memoryBytes);
+        meterRegistry.gauge("xilian.tts.cache.disk.bytes", this, c -> c.diskBytes);
+        if (enabled) {
+            loadDiskIndex();
+        }
+    }
+
+    /**
+     * 命中缓存时直接返回缓存的音频，否则调用 synthesizer 合成并写入缓存
+     *
+     * @param request     发给 GPT-SoVITS 的合成请求，用于计算缓存 key（见 {@link TtsSynthesisRequest#cacheKey()}）
+     * @param synthesizer 真正发起合成的调用，只在未命中时订阅
+     */
+    public Flux<DataBuffer> getOrSynthesize(TtsSynthesisRequest request, Supplier<Flux<DataBuffer>> synthesizer) {
+        if (!enabled) {
+            return synthesizer.get();
+        }
+        String key = request.cacheKey();
+        return Flux.defer(() -> lookup(key, synthesizer));
+    }
+
+    private Flux<DataBuffer> lookup(String key, Supplier<Flux<DataBuffer>> synthesizer) {
+        Flux<DataBuffer> cached = find(key);
+        if (cached != null) {
+            return cached;
+        }
+        AtomicBoolean leader = new AtomicBoolean();
+        Flux<byte[]> shared = inFlight.computeIfAbsent(key, k -> {
+            leader.set(true);
+            return synthesize(k, synthesizer);
+        });
+        (leader.get() ? missCounter : coalescedCounter).increment();
+        return shared.map(BUFFER_FACTORY::wrap);
+    }
+
+    /**
+     * 按 key 取已缓存或正在合成的音频，都没有时返回 null
+     */
+    public Flux<DataBuffer> find(String key) {
+        List<byte[]> cached = memoryGet(key);
+        if (cached != null) {
+            memoryHitCounter.increment();
+            return Flux.fromIterable(cached).map(BUFFER_FACTORY::wrap);
+        }
+        Flux<DataBuffer> mapped = diskGet(key);
+        if (mapped != null) {
+            diskHitCounter.increment();
+            return mapped;
+        }
+        Flux<byte[]> shared = inFlight.get(key);
+        if (shared != null) {
+            coalescedCounter.increment();
+            return shared.map(BUFFER_FACTORY::wrap);
+        }
+        return null;
+    }
+
+    /**
+     * 记住要发出去的音频地址对应的合成请求，返回地址中使用的 key
+     * <p>
+     * 地址发出后音频可能被淘汰，也可能因为超过内存层上限、磁盘写入失败而从未进入缓存，
+     * 记住请求后 {@link #findOrSynthesize} 可以按原来的参数重新合成，地址不会失效。
+     */
+    public String link(TtsSynthesisRequest request) {
+        String key = request.cacheKey();
+        synchronized (this) {
+            issued.put(key, request);
+            Iterator<String> iterator = issued.keySet().iterator();
+            while (issued.size() > maxIssuedLinks && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return key;
+    }
+
+    /**
+     * 按 key 取音频；缓存中没有、但 key 是 {@link #link} 发出的地址时，按记住的请求重新合成并写入缓存。都不是时返回 null
+     *
+     * @param synthesizer 按请求发起合成的调用，只在需要重新合成时调用
+     */
+    public Flux<DataBuffer> findOrSynthesize(String key, Function<TtsSynthesisRequest, Flux<DataBuffer>> synthesizer) {
+        Flux<DataBuffer> cached = find(key);
+        if (cached != null) {
+            return cached;
+        }
+        TtsSynthesisRequest request;
+        synchronized (this) {
+            request = issued.get(key);
+        }
+        if (request == null) {
+            return null;
+        }
+        return Flux.defer(() -> lookup(key, () -> synthesizer.apply(request)));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 发起一次合成：上游的块复制一份后立即释放，所有订阅者共享这些块；合成完成后写入内存和磁盘
+     */
+    private Flux<byte[]> synthesize(String key, Supplier<Flux<DataBuffer>> synthesizer) {
+        List<byte[]> chunks = new ArrayList<>();
+        return synthesizer.get()
+                .map(buffer -> {
+                    try {
+                        byte[] bytes = new byte[buffer.readableByteCount()];
+                        buffer.read(bytes);
+                        return bytes;
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                })
+                .doOnNext(chunks::add)
+                .doOnComplete(() -> store(key, chunks))
+                .doFinally(signal -> inFlight.remove(key))
+                .replay()
+                // 不随订阅者取消而取消，合成完成后写入缓存
+                .autoConnect(1);
+    }
+
+    private void store(String key, List<byte[]> chunks) {
+        long bytes = chunks.stream().mapToLong(chunk -> chunk.length).sum();
+        if (bytes == 0) {
+            return;
+        }
+        memoryPut(key, List.copyOf(chunks), bytes);
+        Schedulers.boundedElastic().schedule(() -> diskPut(key, chunks, bytes));
+    }
+
+    private synchronized List<byte[]> memoryGet(String key) {
+        return memory.get(key);
+    }
+
+    private synchronized void memoryPut(String key, List<byte[]> chunks, long bytes) {
+        if (bytes > maxMemoryBytes) {
+            return;
+        }
+        List<byte[]> previous = memory.put(key, chunks);
+        memoryBytes += bytes - (previous == null ? 0 : weight(previous));
+        Iterator<Map.Entry<String, List<byte[]>>> iterator = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+            Map.Entry<String, List<byte[]>> eldest = iterator.next();
+            memoryBytes -= weight(eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 磁盘命中：只读映射整个文件，按固定大小切片包装返回
+     */
+    private Flux<DataBuffer> diskGet(String key) {
+        synchronized (this) {
+            if (disk.get(key) == null) {
+                return null;
+            }
+        }
+        Path file = dir.resolve(key + SUFFIX);
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            log.warn("读取音频缓存失败，按未命中处理: {}", file, e);
+            synchronized (this) {
+                Long size = disk.remove(key);
+                diskBytes -= size == null ? 0 : size;
+            }
+            return null;
+        }
+        int size = mapped.capacity();
+        int slices = (size + DISK_SLICE_BYTES - 1) / DISK_SLICE_BYTES;
+        return Flux.range(0, slices)
+                .map(i -> {
+                    int offset = i * DISK_SLICE_BYTES;
+                    ByteBuffer slice = mapped.slice(offset, Math.min(DISK_SLICE_BYTES, size - offset));
+                    return BUFFER_FACTORY.wrap(slice);
+                });
+    }
+
+    /**
+     * 写入临时文件后原子改名，读取方不会看到写了一半的文件
+     */
+    private void diskPut(String key, List<byte[]> chunks, long bytes) {
+        Path file = dir.resolve(key + SUFFIX);
+        try {
+            Files.createDirectories(dir);
+            Path temp = Files.createTempFile(dir, key, ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer[] buffers = chunks.stream().map(ByteBuffer::wrap).toArray(ByteBuffer[]::new);
+                long written = 0;
+                while (written < bytes) {
+                    written += channel.write(buffers);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("写入音频缓存失败: {}", file, e);
+            return;
+        }
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long previous = disk.put(key, bytes);
+            diskBytes += bytes - (previous == null ? 0 : previous);
+            collectDiskEvictions(evicted);
+        }
+        deleteFiles(evicted);
+    }
+
+    /**
+     * 启动时按最后修改时间从旧到新恢复磁盘索引
+     */
+    private void loadDiskIndex() {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<String> evicted = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> cached = files
+                    .filter(path -> path.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparingLong(path -> path.toFile().lastModified()))
+                    .toList();
+            synchronized (this) {
+                for (Path path : cached) {
+                    String name = path.getFileName().toString();
+                    long size = Files.size(path);
+                    disk.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                    diskBytes += size;
+                }
+                collectDiskEvictions(evicted);
+            }
+        } catch (IOException e) {
+            log.warn("加载音频缓存索引失败: {}", dir, e);
+        }
+        deleteFiles(evicted);
+        log.info("音频缓存已加载 {} 条，共 {} bytes", disk.size(), diskBytes);
+    }
+
+    private void collectDiskEvictions(List<String> evicted) {
+        Iterator<Map.Entry<String, Long>> iterator = disk.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            diskBytes -= eldest.getValue();
+            evicted.add(eldest.getKey());
+            iterator.remove();
+        }
+    }
+
+    private void deleteFiles(List<String> keys) {
+        for (String key : keys) {
+            try {
+                Files.deleteIfExists(dir.resolve(key + SUFFIX));
+            } catch (IOException e) {
+                // 文件仍被映射时（Windows）删除会失败，下次启动时重新参与淘汰
+                log.debug("删除音频缓存失败: {}", key, e);
+            }
+        }
+    }
+
+    private static long weight(List<byte[]> chunks) {
+        long bytes = 0;
+        for (byte[] chunk : chunks) {
+            bytes += chunk.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * 缓存 key：规范化文本和其余参数的 SHA-256
+     *
+     * @param params 文本以外全部合成参数的规范表示
+     */
+    public static String key(String text, String params) {
+        String normalized = text == null ? "" : text.strip().replaceAll("\\s+", " ");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(normalized.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(params.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.springai.xilianai.util;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多个 GPT-SoVITS 进程组成的合成节点池
+ * <p>
+ * 每个请求发给健康节点中未完成请求最少的一个；节点连接失败或返回 5xx 时标记为不健康，
+ * 还没收到任何音频的请求换一个节点重试（每个节点最多试一次）。后台定期探测所有节点，恢复的节点重新参与分发。
+ * 所有节点都不健康时仍按未完成请求数分发，是否放弃由 {@link TtsGateway} 的熔断决定。
+ */
+@Slf4j
+@Component
+public class TtsBackendPool {
+
+    private final WebClient webClient;
+    private final TtsProperties.HealthCheck healthCheck;
+    private final List<Backend> backends;
+    private final List<Runnable> healthListeners = new CopyOnWriteArrayList<>();
+    private Disposable healthTask;
+
+    public TtsBackendPool(WebClient ttsWebClient, TtsProperties properties) {
+        this.webClient = ttsWebClient;
+        this.healthCheck = properties.getHealthCheck();
+        List<String> urls = properties.getBackends().isEmpty()
+                ? List.of(properties.getBaseUrl()) : properties.getBackends();
+        List<Backend> list = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            list.add(new Backend(url.endsWith("/") ? url.substring(0, url.length() - 1) : url));
+        }
+        this.backends = List.copyOf(list);
+    }
+
+    @PostConstruct
+    public void start() {
+        healthTask = Flux.interval(healthCheck.getInterval(), healthCheck.getInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> checkHealth())
+                .subscribe();
+        log.info("TTS 节点池: {}", backends.stream().map(backend -> backend.url).toList());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (healthTask != null) {
+            healthTask.dispose();
+        }
+    }
+
+    /**
+     * 调用 GPT-SoVITS 的 /tts 合成；返回的 {@link DataBuffer} 由订阅方释放
+     */
+    public Flux<DataBuffer> post(TtsSynthesisRequest request) {
+        // 请求体只拼接一次，换节点重试时复用
+        return Flux.defer(() -> attempt(request.toJson(), new HashSet<>()));
+    }
+
+    /**
+     * 健康的节点数，没有健康节点时为 0
+     */
+    public int healthyCount() {
+        int count = 0;
+        for (Backend backend : backends) {
+            if (backend.healthy) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int size() {
+        return backends.size();
+    }
+
+    /**
+     * 任一节点健康状态变化（故障、健康检查失败或恢复）时回调，{@link TtsGateway} 据此调整并发上限、放行排队的请求
+     */
+    public void onHealthChange(Runnable listener) {
+        healthListeners.add(listener);
+    }
+
+    private void healthChanged() {
+        for (Runnable listener : healthListeners) {
+            listener.run();
+        }
+    }
+
+    private Flux<DataBuffer> attempt(byte[] body, Set<Backend> tried) {
+        Backend backend = choose(tried);
+        tried.add(backend);
+        AtomicBoolean received = new AtomicBoolean();
+        backend.outstanding.incrementAndGet();
+        return webClient.post()
+                .uri(URI.create(backend.url + "/tts"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToFlux(DataBuffer.class)
+                .doOnNext(buffer -> received.set(true))
+                .doFinally(signal -> backend.outstanding.decrementAndGet())
+                .onErrorResume(error -> {
+                    if (!isBackendFailure(error)) {
+                        return Flux.error(error);
+                    }
+                    if (backend.markDown(error)) {
+                        healthChanged();
+                    }
+                    // 已经发出的音频不能撤回，只有还没收到音频的请求才换节点
+                    if (received.get() || tried.size() >= backends.size()) {
+                        return Flux.error(error);
+                    }
+                    log.info("TTS 节点 {} 失败，换节点重试", backend.url);
+                    return attempt(body, tried);
+                });
+    }
+
+    /**
+     * 没试过的节点中，优先选健康的，其次选未完成请求最少的
+     */
+    private Backend choose(Set<Backend> tried) {
+        Backend best = null;
+        for (Backend backend : backends) {
+            if (tried.contains(backend)) {
+                continue;
+            }
+            if (best == null || (backend.healthy && !best.healthy)
+                    || (backend.healthy == best.healthy
+                    && backend.outstanding.get() < best.outstanding.get())) {
+                best = backend;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 连接失败、超时和 5xx 是节点故障；4xx 是请求本身的问题，换节点也没用
+     */
+    private static boolean isBackendFailure(Throwable error) {
+        return error instanceof WebClientRequestException
+                || error instanceof WebClientResponseException response
+                && response.getStatusCode().is5xxServerError();
+    }
+
+    /**
+     * 探测所有节点：返回 5xx 以外的任何响应都视为健康
+     */
+    Mono<Void> checkHealth() {
+        return Flux.fromIterable(backends)
+                .flatMap(backend -> webClient.get()
+                        .uri(URI.create(backend.url + healthCheck.getPath()))
+                        .exchangeToMono(response -> response.releaseBody()
+                                .thenReturn(!response.statusCode().is5xxServerError()))
+                        .timeout(healthCheck.getTimeout())
+                        .onErrorReturn(false)
+                        .doOnNext(up -> {
+                            if (backend.setHealthy(up)) {
+                                healthChanged();
+                            }
+                        }))
+                .then();
+    }
+
+    private static final class Backend {
+        private final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile boolean healthy = true;
+
+        Backend(String url) {
+            this.url = url;
+        }
+
+        /**
+         * @return 状态是否发生了变化
+         */
+        boolean markDown(Throwable error) {
+            if (healthy) {
+                healthy = false;
+                log.warn("TTS 节点 {} 不可用: {}", url, error.getMessage());
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return 状态是否发生了变化
+         */
+        boolean setHealthy(boolean up) {
+            if (up == healthy) {
+                return false;
+            }
+            if (up) {
+                log.info("TTS 节点 {} 已恢复", url);
+            } else {
+                log.warn("TTS 节点 {} 健康检查失败", url);
+            }
+            healthy = up;
+            return true;
+        }
+    }
+}
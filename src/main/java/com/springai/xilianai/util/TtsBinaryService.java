@@ -2,160 +2,46 @@ package com.springai.xilianai.util;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferUtils;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.AsynchronousFileChannel;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 @Service
 @Slf4j
 public class TtsBinaryService {
     
-    private final WebClient webClient;
-    private final String apiBaseUrl = "http://127.0.0.1:9880";
+    private final TtsGateway gateway;
+    private final TtsAudioCache audioCache;
+    private final AudioArchive audioArchive;
+    private final VoiceProfiles voiceProfiles;
     
-    public TtsBinaryService() {
-        this.webClient = WebClient.builder()
-                .baseUrl(apiBaseUrl)
-                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(10 * 1024 * 1024))
-                .build();
+    public TtsBinaryService(TtsGateway gateway, TtsAudioCache audioCache, AudioArchive audioArchive,
+                            VoiceProfiles voiceProfiles) {
+        this.gateway = gateway;
+        this.audioCache = audioCache;
+        this.audioArchive = audioArchive;
+        this.voiceProfiles = voiceProfiles;
     }
     
     /**
      * 合成二进制音频流
      * 
-     * @param text 要合成的文本
+     * @param text  要合成的文本
+     * @param voice 音色名称，为空时使用默认音色
+     * @param speed 语速，为空时使用音色的默认语速
      * @return 二进制音频数据流
+     * @throws IllegalArgumentException 文本为空、未知的音色或语速超出范围
      */
-    public Flux<DataBuffer> synthesizeBinary(String text,String chatId) {
-        if (text == null || text.trim().isEmpty()) {
-            return Flux.error(new IllegalArgumentException("文本内容不能为空"));
+    public Flux<DataBuffer> synthesizeBinary(String text, String chatId, String voice, Double speed) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("文本内容不能为空");
         }
 
-        Flux<DataBuffer> dataBufferFlux = webClient.post()
-                .uri("/tts")
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(createTtsRequest(text))
-                .retrieve()
-                .bodyToFlux(DataBuffer.class)
-                .doOnNext(buffer -> log.debug("接收到音频数据块，大小: {} bytes", buffer.readableByteCount()));
-        saveAudioData(dataBufferFlux,chatId);
-        return dataBufferFlux;
-    }
-
-    //private static final DateTimeFormatter DATE_FORMATTER =DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
-    private void saveAudioData(Flux<DataBuffer> dataBufferFlux,String chatId) {
-        String fileDir = System.getProperty("user.dir") + "/tmp/audio-data/audio-data_"+chatId;
-        // 生成文件名
-        String actualFileName ="audio_" + System.currentTimeMillis() + ".wav";
-        Path dirPath = Paths.get(fileDir);
-        //如果文件夹不存在，则创建
-        if (!Files.exists(dirPath)) {
-            try {
-                Files.createDirectories(dirPath);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            Path filePath = dirPath.resolve(actualFileName);
-            // 创建异步文件通道
-            AsynchronousFileChannel fileChannel;
-            try {
-                fileChannel = AsynchronousFileChannel.open(
-                        filePath,
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.CREATE,
-                        StandardOpenOption.TRUNCATE_EXISTING
-                );
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            // 订阅数据流并写入文件
-            dataBufferFlux
-                    .windowUntil(buffer -> {
-                        // 这里可以根据需要添加条件来控制缓冲区大小
-                        return true;
-                    })
-                    .flatMap(window -> window.reduce(DataBuffer::write))
-                    .index()
-                    .flatMapSequential(tuple -> {
-                        long index = tuple.getT1();
-                        DataBuffer buffer = tuple.getT2();
-
-                        // 将DataBuffer转换为ByteBuffer
-                        ByteBuffer byteBuffer = buffer.asByteBuffer();
-
-                        // 异步写入文件
-                        return DataBufferUtils.write(
-                                Flux.just(buffer),
-                                fileChannel
-                        ).doOnTerminate(() -> {
-                            // 释放缓冲区
-                            DataBufferUtils.release(buffer);
-                        });
-                    })
-                    .doOnComplete(() -> System.out.println("音频文件已保存: " + filePath))
-                    .doOnError(error -> {
-                        try {
-                            fileChannel.close();
-                        } catch (IOException e) {
-                            System.out.println("资源关闭失败" + e.getMessage());
-                        }
-                    })
-                    .subscribe();
-        }
-    }
-    
-    /**
-     * 创建TTS请求体
-     */
-    private Map<String, Object> createTtsRequest(String text) {
-        Map<String, Object> request = new HashMap<>();
-        request.put("text", text);
-        request.put("text_lang", "zh");
-        request.put("ref_audio_path", "F:/GPT-SoVITS-v2pro-20250604/wav/【吃惊】这片麦田可是我们的宝贝，不能随便踩进去哦。会把希望踩坏的。.wav");
-        List<String> aux_ref_audio_paths = new ArrayList<>();
-        aux_ref_audio_paths.add("F:/GPT-SoVITS-v2pro-20250604/wav/【开心】那时我们都是小孩子呢。.wav");
-        aux_ref_audio_paths.add("F:/GPT-SoVITS-v2pro-20250604/wav/【恐惧】就像你的名字那样，背负起最初的混沌，和这个我们深爱的世界吧…….wav");
-        aux_ref_audio_paths.add("F:/GPT-SoVITS-v2pro-20250604/wav/【难过】是呀。看着眼前的世界，悲伤的念头还是化作了现实…….wav");
-        aux_ref_audio_paths.add("F:/GPT-SoVITS-v2pro-20250604/wav/【其他】（均匀的呼吸声）.wav");
-        aux_ref_audio_paths.add("F:/GPT-SoVITS-v2pro-20250604/wav/【生气】嗯，毕竟…你可是我们的憧憬呀。.wav");
-        request.put("aux_ref_audio_paths", aux_ref_audio_paths);
-        request.put("prompt_lang", "zh");
-        request.put("prompt_text", "这片麦田可是我们的宝贝，不能随便踩进去哦。会把希望踩坏的。");
-        request.put("top_k", 5);
-        request.put("top_p", 1);
-        request.put("temperature", 1);
-        request.put("text_split_method", "cut5");
-        request.put("batch_size", 1);
-        request.put("batch_threshold", 0.75);
-        request.put("split_bucket", true);
-        request.put("speed_factor", 1);
-        request.put("fragment_interval", 0.3);
-        request.put("seed", -1);
-        request.put("media_type", "wav");
-        request.put("streaming_mode", false);
-        request.put("parallel_infer", true);
-        request.put("repetition_penalty", 1.35);
-        request.put("sample_steps", 32);
-        request.put("super_sampling", false);
-        request.put("overlap_length", 2);
-        request.put("min_chunk_length", 16);
-        
-        return request;
+        // 上游边推理边返回：先返回 wav 头，之后每推理完一段就返回一段
+        TtsSynthesisRequest request = new TtsSynthesisRequest(voiceProfiles.get(voice), text, null, speed, 1, true);
+        Flux<DataBuffer> dataBufferFlux = audioCache.getOrSynthesize(request, () -> gateway
+                .synthesize(request, TtsGateway.Priority.BATCH)
+                .doOnNext(buffer -> log.debug("接收到音频数据块，大小: {} bytes", buffer.readableByteCount())));
+        // 同一次订阅里边写归档边返回给调用方
+        return audioArchive.tee(chatId, text, dataBufferFlux);
     }
 }
\ No newline at end of file
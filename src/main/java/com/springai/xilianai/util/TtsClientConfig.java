@@ -0,0 +1,40 @@
+package com.springai.xilianai.util;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * 调用 GPT-SoVITS 的共享 HTTP 客户端：非阻塞、带连接池（限制到 TTS 服务的连接数）、连接和响应超时、保持长连接
+ */
+@Configuration
+public class TtsClientConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider ttsConnectionProvider(TtsProperties properties) {
+        TtsProperties.Http http = properties.getHttp();
+        return ConnectionProvider.builder("gpt-sovits")
+                .maxConnections(http.getMaxConnections())
+                .pendingAcquireTimeout(http.getPendingAcquireTimeout())
+                .maxIdleTime(http.getMaxIdleTime())
+                .build();
+    }
+
+    @Bean
+    public WebClient ttsWebClient(ConnectionProvider ttsConnectionProvider, TtsProperties properties) {
+        TtsProperties.Http http = properties.getHttp();
+        HttpClient httpClient = HttpClient.create(ttsConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) http.getConnectTimeout().toMillis())
+                .responseTimeout(http.getResponseTimeout())
+                .keepAlive(true);
+        return WebClient.builder()
+                .baseUrl(properties.getBaseUrl())
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(10 * 1024 * 1024))
+                .build();
+    }
+}
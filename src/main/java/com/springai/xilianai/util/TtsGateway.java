@@ -0,0 +1,389 @@
+package com.springai.xilianai.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TTS 网关：所有发给 GPT-SoVITS 的合成请求都经过这里
+ * <p>
+ * GPT-SoVITS 单进程同时处理的请求越多，每个请求都越慢；网关按健康的进程数限制全局并发（每个进程 maxConcurrency 个），
+ * 其余请求按优先级排队，取得名额的请求由 {@link TtsBackendPool} 分发到具体进程：
+ * <ul>
+ *     <li>交互请求（边聊边播的句子）排在批量请求（/tts/synthesize、工具调用）前面，同优先级先来先服务</li>
+ *     <li>队列有上限，排满时交互请求挤掉排在最后的批量请求，否则直接拒绝</li>
+ *     <li>排队超过该优先级的最长等待时间就放弃；按平均合成耗时估算排队时间，入队时就赶不上的直接拒绝</li>
+ *     <li>连续失败达到阈值后熔断，熔断期间直接拒绝；到期后放行一个试探请求，成功则恢复</li>
+ * </ul>
+ * 被拒绝的请求得到 {@link TtsOverloadedException}，不会发给 GPT-SoVITS。
+ */
+@Slf4j
+@Component
+public class TtsGateway {
+
+    public enum Priority {
+        /**
+         * 用户正在等着听的语音
+         */
+        INTERACTIVE,
+        /**
+         * 整段合成、工具调用
+         */
+        BATCH
+    }
+
+    /**
+     * 拒绝原因，对应指标 xilian.tts.gateway.rejected 的 reason 标签
+     */
+    private enum RejectReason {
+        CIRCUIT_OPEN, DEADLINE, QUEUE_FULL, SHED, QUEUE_TIMEOUT
+    }
+
+    private static final int WAITING = 0;
+    private static final int STARTED = 1;
+    private static final int DONE = 2;
+
+    /**
+     * 合成耗时滑动平均的权重
+     */
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final TtsBackendPool backendPool;
+    private final TtsProperties.Gateway properties;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>();
+    private int running;
+    private int consecutiveFailures;
+    /**
+     * 熔断截止时间（纳秒），0 表示未熔断
+     */
+    private long openUntilNanos;
+    private boolean probing;
+    private double serviceNanosEwma;
+
+    private final Map<Priority, Timer> waitTimers = new EnumMap<>(Priority.class);
+    private final Map<RejectReason, Counter> rejectCounters = new EnumMap<>(RejectReason.class);
+
+    public TtsGateway(TtsBackendPool backendPool, TtsProperties properties, MeterRegistry meterRegistry) {
+        this.backendPool = backendPool;
+        this.properties = properties.getGateway();
+        for (Priority priority : Priority.values()) {
+            String tag = priority.name().toLowerCase();
+            waitTimers.put(priority, Timer.builder("xilian.tts.gateway.wait")
+                    .tag("priority", tag)
+                    .register(meterRegistry));
+            meterRegistry.gauge("xilian.tts.gateway.queue", List.of(Tag.of("priority", tag)),
+                    this, gateway -> gateway.queued(priority));
+        }
+        for (RejectReason reason : RejectReason.values()) {
+            rejectCounters.put(reason, Counter.builder("xilian.tts.gateway.rejected")
+                    .tag("reason", reason.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        meterRegistry.gauge("xilian.tts.gateway.running", this, gateway -> gateway.running());
+        meterRegistry.gauge("xilian.tts.gateway.circuit.open", this, gateway -> gateway.circuitOpen() ? 1 : 0);
+        // 节点恢复后并发上限变大，排队的请求不必等到有请求结束才放行
+        backendPool.onHealthChange(this::capacityChanged);
+    }
+
+    /**
+     * 排队取得执行名额后调用 GPT-SoVITS 合成；返回的 {@link DataBuffer} 由订阅方释放
+     */
+    public Flux<DataBuffer> synthesize(TtsSynthesisRequest request, Priority priority) {
+        return Mono.<Ticket>create(sink -> admit(new Ticket(priority, sink)))
+                .flatMapMany(ticket -> backendPool.post(request)
+                        .doOnComplete(ticket::succeeded)
+                        .doOnError(ticket::failed)
+                        .doFinally(signal -> release(ticket)));
+    }
+
+    /**
+     * 全局并发上限：每个健康进程 maxConcurrency 个；全部不健康时按一个进程算，由熔断决定是否放行
+     */
+    private int concurrencyLimit() {
+        return properties.getMaxConcurrency() * Math.max(1, backendPool.healthyCount());
+    }
+
+    private void admit(Ticket ticket) {
+        List<Runnable> signals = new ArrayList<>(2);
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (openUntilNanos != 0 && (now < openUntilNanos || probing)) {
+                reject(ticket, RejectReason.CIRCUIT_OPEN, "TTS 服务熔断中", signals);
+            } else if (openUntilNanos != 0 && running < concurrencyLimit()) {
+                // 熔断到期：放行一个试探请求
+                probing = true;
+                ticket.probe = true;
+                start(ticket, now, signals);
+            } else if (openUntilNanos != 0) {
+                reject(ticket, RejectReason.CIRCUIT_OPEN, "TTS 服务熔断中，等待试探", signals);
+            } else if (running < concurrencyLimit() && queue.isEmpty()) {
+                start(ticket, now, signals);
+            } else if (expectedWaitNanos(ticket) > ticket.maxWaitNanos) {
+                reject(ticket, RejectReason.DEADLINE, "TTS 服务繁忙，预计排队时间超过上限", signals);
+            } else if (queue.size() >= properties.getMaxQueueSize() && !shedForInteractive(ticket, signals)) {
+                reject(ticket, RejectReason.QUEUE_FULL, "TTS 服务繁忙，排队已满", signals);
+            } else {
+                queue.add(ticket);
+                ticket.timeout = Schedulers.parallel().schedule(() -> expire(ticket),
+                        ticket.maxWaitNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        ticket.sink.onCancel(() -> cancel(ticket));
+        runAll(signals);
+    }
+
+    /**
+     * 队列已满时，交互请求挤掉排在最后的批量请求
+     */
+    private boolean shedForInteractive(Ticket ticket, List<Runnable> signals) {
+        if (ticket.priority != Priority.INTERACTIVE) {
+            return false;
+        }
+        Ticket victim = null;
+        for (Ticket queued : queue) {
+            if (queued.priority == Priority.BATCH && (victim == null || queued.compareTo(victim) > 0)) {
+                victim = queued;
+            }
+        }
+        if (victim == null || !victim.state.compareAndSet(WAITING, DONE)) {
+            return false;
+        }
+        queue.remove(victim);
+        victim.disposeTimeout();
+        reject(victim, RejectReason.SHED, "TTS 服务繁忙，批量请求让位于交互请求", signals);
+        return true;
+    }
+
+    /**
+     * 按平均合成耗时估算排队时间：(排在前面的请求数 + 1) / 并发上限 * 平均耗时
+     */
+    private long expectedWaitNanos(Ticket ticket) {
+        if (serviceNanosEwma == 0) {
+            return 0;
+        }
+        int ahead = 0;
+        for (Ticket queued : queue) {
+            if (queued.priority.compareTo(ticket.priority) <= 0) {
+                ahead++;
+            }
+        }
+        return (long) (serviceNanosEwma * (ahead + 1) / concurrencyLimit());
+    }
+
+    private void start(Ticket ticket, long now, List<Runnable> signals) {
+        running++;
+        ticket.state.set(STARTED);
+        ticket.startNanos = now;
+        waitTimers.get(ticket.priority).record(now - ticket.enqueuedNanos, TimeUnit.NANOSECONDS);
+        signals.add(() -> ticket.sink.success(ticket));
+    }
+
+    private void reject(Ticket ticket, RejectReason reason, String message, List<Runnable> signals) {
+        ticket.state.set(DONE);
+        if (ticket.probe) {
+            probing = false;
+        }
+        rejectCounters.get(reason).increment();
+        log.warn("TTS 请求被拒绝（{}）: {}", reason, message);
+        signals.add(() -> ticket.sink.error(new TtsOverloadedException(message)));
+    }
+
+    /**
+     * 合成结束（完成、失败或取消）：归还名额、更新熔断状态，再从队列里取下一个
+     */
+    private void release(Ticket ticket) {
+        if (!ticket.state.compareAndSet(STARTED, DONE)) {
+            return;
+        }
+        List<Runnable> signals = new ArrayList<>();
+        synchronized (this) {
+            running--;
+            long now = System.nanoTime();
+            if (ticket.outcome == Outcome.SUCCESS) {
+                long serviceNanos = now - ticket.startNanos;
+                serviceNanosEwma = serviceNanosEwma == 0 ? serviceNanos
+                        : EWMA_ALPHA * serviceNanos + (1 - EWMA_ALPHA) * serviceNanosEwma;
+                consecutiveFailures = 0;
+                if (ticket.probe) {
+                    log.info("TTS 试探请求成功，熔断恢复");
+                    openUntilNanos = 0;
+                    probing = false;
+                }
+            } else if (ticket.outcome == Outcome.FAILURE) {
+                consecutiveFailures++;
+                if (ticket.probe || consecutiveFailures >= properties.getFailureThreshold()) {
+                    openCircuit(now, signals);
+                }
+            } else if (ticket.probe) {
+                // 试探请求被取消，允许下一个请求继续试探
+                probing = false;
+            }
+            dispatch(now, signals);
+        }
+        runAll(signals);
+    }
+
+    private void openCircuit(long now, List<Runnable> signals) {
+        log.warn("TTS 连续失败 {} 次，熔断 {}", consecutiveFailures, properties.getOpenDuration());
+        openUntilNanos = now + properties.getOpenDuration().toNanos();
+        probing = false;
+        // 排队中的请求也不会成功了，直接拒绝
+        Ticket queued;
+        while ((queued = queue.poll()) != null) {
+            if (queued.state.compareAndSet(WAITING, DONE)) {
+                queued.disposeTimeout();
+                reject(queued, RejectReason.CIRCUIT_OPEN, "TTS 服务熔断中", signals);
+            }
+        }
+    }
+
+    private void dispatch(long now, List<Runnable> signals) {
+        while (running < concurrencyLimit() && !queue.isEmpty()) {
+            Ticket next = queue.poll();
+            if (!next.state.compareAndSet(WAITING, STARTED)) {
+                continue;
+            }
+            next.disposeTimeout();
+            start(next, now, signals);
+        }
+    }
+
+    /**
+     * 节点健康状态变化：并发上限随健康节点数变化，按新的上限从队列里取
+     */
+    private void capacityChanged() {
+        List<Runnable> signals = new ArrayList<>();
+        synchronized (this) {
+            if (openUntilNanos == 0) {
+                dispatch(System.nanoTime(), signals);
+            }
+        }
+        runAll(signals);
+    }
+
+    private void expire(Ticket ticket) {
+        if (!ticket.state.compareAndSet(WAITING, DONE)) {
+            return;
+        }
+        List<Runnable> signals = new ArrayList<>(1);
+        synchronized (this) {
+            queue.remove(ticket);
+            reject(ticket, RejectReason.QUEUE_TIMEOUT, "TTS 服务繁忙，排队超时", signals);
+        }
+        runAll(signals);
+    }
+
+    /**
+     * 调用方在排队期间取消：移出队列；已经取得名额但还没开始调用时归还名额
+     */
+    private void cancel(Ticket ticket) {
+        if (ticket.state.compareAndSet(WAITING, DONE)) {
+            ticket.disposeTimeout();
+            synchronized (this) {
+                queue.remove(ticket);
+                if (ticket.probe) {
+                    probing = false;
+                }
+            }
+        } else {
+            release(ticket);
+        }
+    }
+
+    private static void runAll(List<Runnable> signals) {
+        for (Runnable signal : signals) {
+            signal.run();
+        }
+    }
+
+    private synchronized int queued(Priority priority) {
+        int count = 0;
+        for (Ticket ticket : queue) {
+            if (ticket.priority == priority) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private synchronized int running() {
+        return running;
+    }
+
+    private synchronized boolean circuitOpen() {
+        return openUntilNanos != 0;
+    }
+
+    private enum Outcome {
+        NONE, SUCCESS, FAILURE
+    }
+
+    private final class Ticket implements Comparable<Ticket> {
+        private final Priority priority;
+        private final long sequence;
+        private final long enqueuedNanos = System.nanoTime();
+        private final long maxWaitNanos;
+        private final MonoSink<Ticket> sink;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private volatile Outcome outcome = Outcome.NONE;
+        private Disposable timeout;
+        private long startNanos;
+        private boolean probe;
+
+        Ticket(Priority priority, MonoSink<Ticket> sink) {
+            this.priority = priority;
+            this.sequence = TtsGateway.this.sequence.getAndIncrement();
+            Duration maxWait = priority == Priority.INTERACTIVE
+                    ? properties.getInteractiveMaxWait() : properties.getBatchMaxWait();
+            this.maxWaitNanos = maxWait.toNanos();
+            this.sink = sink;
+        }
+
+        void succeeded() {
+            outcome = Outcome.SUCCESS;
+        }
+
+        /**
+         * 4xx（参数错误）不是服务故障，不计入熔断
+         */
+        void failed(Throwable error) {
+            boolean clientError = error instanceof WebClientResponseException response
+                    && response.getStatusCode().is4xxClientError();
+            outcome = clientError ? Outcome.NONE : Outcome.FAILURE;
+        }
+
+        void disposeTimeout() {
+            if (timeout != null) {
+                timeout.dispose();
+            }
+        }
+
+        @Override
+        public int compareTo(Ticket other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
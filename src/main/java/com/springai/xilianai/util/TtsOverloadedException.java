@@ -0,0 +1,15 @@
+package com.springai.xilianai.util;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * TTS 服务繁忙（排队已满、排队超时、预计赶不上截止时间或熔断中），请求被拒绝而没有发给 GPT-SoVITS
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class TtsOverloadedException extends RuntimeException {
+
+    public TtsOverloadedException(String message) {
+        super(message);
+    }
+}
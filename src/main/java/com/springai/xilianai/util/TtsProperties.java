@@ -0,0 +1,257 @@
+package com.springai.xilianai.util;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 语音合成配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "xilian.tts")
+public class TtsProperties {
+
+    /**
+     * GPT-SoVITS 服务地址（只有一个 TTS 进程时）
+     */
+    private String baseUrl = "http://127.0.0.1:9880";
+
+    /**
+     * 多个 GPT-SoVITS 进程的地址；配置后按未完成请求数最少的进程分发，为空时只使用 baseUrl
+     */
+    private List<String> backends = new ArrayList<>();
+
+    private HealthCheck healthCheck = new HealthCheck();
+
+    /**
+     * 请求没有指定音色时使用的音色名称
+     */
+    private String defaultVoice = "default";
+
+    /**
+     * 按名称配置的音色：参考音频、提示文本和合成参数
+     */
+    private Map<String, Voice> voices = new LinkedHashMap<>();
+
+    private Http http = new Http();
+
+    private Gateway gateway = new Gateway();
+
+    private Segmenter segmenter = new Segmenter();
+
+    /**
+     * 一段文本中每个 TTS 进程同时合成的句子数（按单个进程的承载能力配置），实际并发再乘以进程数；为 1 且只有一个进程时逐句串行合成
+     */
+    private int synthesisConcurrency = 2;
+
+    /**
+     * 并行合成时每个句子预取的音频块数：后面的句子先合成完时，最多在内存中缓冲这么多块等待前面的句子输出，
+     * 其余数据由背压留在连接上
+     */
+    private int synthesisPrefetch = 32;
+
+    private Cache cache = new Cache();
+
+    /**
+     * 调用 GPT-SoVITS 的 HTTP 客户端配置（所有调用共用一个连接池）
+     */
+    @Data
+    public static class Http {
+
+        /**
+         * 连接池中到 TTS 服务的最大连接数，超出的请求排队等待空闲连接
+         */
+        private int maxConnections = 8;
+
+        /**
+         * 等待空闲连接的最长时间
+         */
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(30);
+
+        /**
+         * 建立连接超时
+         */
+        private Duration connectTimeout = Duration.ofSeconds(2);
+
+        /**
+         * 两次收到响应数据之间的最长间隔（流式响应按块计算）
+         */
+        private Duration responseTimeout = Duration.ofSeconds(60);
+
+        /**
+         * 空闲连接保留时长，超过后关闭
+         */
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+    }
+
+    /**
+     * 一个音色的 GPT-SoVITS 合成参数，字段对应 /tts 请求体中的同名参数（驼峰转下划线）；
+     * text、batch_size、streaming_mode 由调用方决定，speed_factor、text_lang 可以按请求覆盖
+     */
+    @Data
+    public static class Voice {
+
+        private String refAudioPath;
+
+        private List<String> auxRefAudioPaths = new ArrayList<>();
+
+        private String promptText = "";
+
+        private String promptLang = "zh";
+
+        private String textLang = "zh";
+
+        private int topK = 5;
+
+        private double topP = 1;
+
+        private double temperature = 1;
+
+        private String textSplitMethod = "cut5";
+
+        private double batchThreshold = 0.75;
+
+        private boolean splitBucket = true;
+
+        private double speedFactor = 1;
+
+        private double fragmentInterval = 0.3;
+
+        private long seed = -1;
+
+        private String mediaType = "wav";
+
+        private boolean parallelInfer = true;
+
+        private double repetitionPenalty = 1.35;
+
+        private int sampleSteps = 32;
+
+        private boolean superSampling = false;
+
+        private int overlapLength = 2;
+
+        private int minChunkLength = 16;
+    }
+
+    /**
+     * TTS 进程健康检查配置
+     */
+    @Data
+    public static class HealthCheck {
+
+        /**
+         * 检查间隔
+         */
+        private Duration interval = Duration.ofSeconds(5);
+
+        /**
+         * 单次检查的超时
+         */
+        private Duration timeout = Duration.ofSeconds(2);
+
+        /**
+         * 检查的路径，返回 5xx 以外的任何响应都视为健康
+         */
+        private String path = "/";
+    }
+
+    /**
+     * TTS 网关配置：所有合成请求经网关排队后发给 GPT-SoVITS
+     */
+    @Data
+    public static class Gateway {
+
+        /**
+         * 每个 TTS 进程同时处理的合成请求数，网关的全局并发为该值乘以健康的进程数
+         */
+        private int maxConcurrency = 2;
+
+        /**
+         * 排队请求数上限；排满时交互请求挤掉排在最后的批量请求，否则拒绝
+         */
+        private int maxQueueSize = 64;
+
+        /**
+         * 交互请求（边聊边播）最长排队时间，超时后放弃
+         */
+        private Duration interactiveMaxWait = Duration.ofSeconds(5);
+
+        /**
+         * 批量请求（/tts/synthesize、工具调用）最长排队时间
+         */
+        private Duration batchMaxWait = Duration.ofSeconds(30);
+
+        /**
+         * 连续失败多少次后熔断
+         */
+        private int failureThreshold = 5;
+
+        /**
+         * 熔断持续时间，之后放行一个试探请求，成功则恢复
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+    }
+
+    /**
+     * 流式分句配置
+     */
+    @Data
+    public static class Segmenter {
+
+        /**
+         * 少于该字数的句子（如“嗯。”）不单独合成，与下一句合并
+         */
+        private int minLength = 4;
+
+        /**
+         * 超过该字数仍没有句末标点时，在最近的逗号、分号处强制切分
+         */
+        private int maxLength = 100;
+
+        /**
+         * 大模型停顿超过该时长没有新文本时，把缓冲中的文本直接送去合成
+         */
+        private Duration flushTimeout = Duration.ofMillis(800);
+    }
+
+    /**
+     * 合成结果缓存配置
+     */
+    @Data
+    public static class Cache {
+
+        /**
+         * 是否缓存合成结果
+         */
+        private boolean enabled = true;
+
+        /**
+         * 磁盘缓存目录
+         */
+        private String dir = System.getProperty("user.dir") + "/tmp/tts-cache";
+
+        /**
+         * 内存缓存的音频总大小上限
+         */
+        private DataSize maxMemorySize = DataSize.ofMegabytes(64);
+
+        /**
+         * 磁盘缓存的音频总大小上限，超出时删除最久没有使用的
+         */
+        private DataSize maxDiskSize = DataSize.ofGigabytes(1);
+
+        /**
+         * 记住多少个已发出的音频地址的合成参数；地址对应的音频被淘汰后，按这些参数重新合成
+         */
+        private int maxIssuedLinks = 5000;
+    }
+}
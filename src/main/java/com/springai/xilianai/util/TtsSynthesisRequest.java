@@ -0,0 +1,79 @@
+package com.springai.xilianai.util;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 一次 GPT-SoVITS 合成请求：音色 + 文本 + 少数按请求变化的参数
+ *
+ * @param voice     音色，提供其余全部合成参数
+ * @param text      要合成的文本
+ * @param textLang  文本语言，为空时使用音色的默认语言
+ * @param speed     语速（speed_factor），为空时使用音色的默认语速
+ * @param batchSize text 中合并的句子数，GPT-SoVITS 按标点切开后一次批量推理
+ * @param streaming 是否让 GPT-SoVITS 边推理边返回（streaming_mode）
+ */
+public record TtsSynthesisRequest(VoiceProfile voice, String text, String textLang, Double speed,
+                                  int batchSize, boolean streaming) {
+
+    private static final JsonStringEncoder JSON = JsonStringEncoder.getInstance();
+
+    private static final byte[] TEXT_PREFIX = "{\"text\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LANG_PREFIX = "\",\"text_lang\":\"".getBytes(StandardCharsets.US_ASCII);
+
+    public TtsSynthesisRequest {
+        if (voice == null || text == null) {
+            throw new IllegalArgumentException("音色和文本不能为空");
+        }
+        if (speed != null && !(speed > 0 && speed <= 10)) {
+            throw new IllegalArgumentException("语速超出范围: " + speed);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch_size 必须大于 0: " + batchSize);
+        }
+    }
+
+    public String effectiveTextLang() {
+        return textLang == null || textLang.isBlank() ? voice.textLang() : textLang;
+    }
+
+    public double effectiveSpeed() {
+        return speed == null ? voice.speedFactor() : speed;
+    }
+
+    /**
+     * 请求体：文本转义后和按请求变化的参数拼在音色预先序列化好的参数片段前面，只分配最终的字节数组和转义结果
+     */
+    public byte[] toJson() {
+        byte[] quotedText = JSON.quoteAsUTF8(text);
+        byte[] quotedLang = JSON.quoteAsUTF8(effectiveTextLang());
+        byte[] options = ("\",\"batch_size\":" + batchSize + ",\"speed_factor\":" + effectiveSpeed()
+                + ",\"streaming_mode\":" + streaming).getBytes(StandardCharsets.US_ASCII);
+        byte[] params = voice.paramsJson();
+
+        byte[] body = new byte[TEXT_PREFIX.length + quotedText.length + LANG_PREFIX.length + quotedLang.length
+                + options.length + params.length];
+        int offset = 0;
+        offset = append(body, offset, TEXT_PREFIX);
+        offset = append(body, offset, quotedText);
+        offset = append(body, offset, LANG_PREFIX);
+        offset = append(body, offset, quotedLang);
+        offset = append(body, offset, options);
+        append(body, offset, params);
+        return body;
+    }
+
+    /**
+     * 合成缓存 key：覆盖文本、音色的全部参数和按请求变化的参数
+     */
+    public String cacheKey() {
+        return TtsAudioCache.key(text, voice.fingerprint() + '|' + effectiveTextLang() + '|' + batchSize
+                + '|' + effectiveSpeed() + '|' + streaming);
+    }
+
+    private static int append(byte[] target, int offset, byte[] source) {
+        System.arraycopy(source, 0, target, offset, source.length);
+        return offset + source.length;
+    }
+}
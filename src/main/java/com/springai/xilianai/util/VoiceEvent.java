@@ -0,0 +1,65 @@
+package com.springai.xilianai.util;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.util.Base64;
+
+/**
+ * 语音对话流中的一个事件：句子文本、该句的一块音频、合成失败或结束
+ * <p>
+ * 音频直接持有 GPT-SoVITS 返回的 {@link DataBuffer}，不复制；消费方写出后负责 {@link #release()}。
+ *
+ * @param sentence 句子序号（从 0 开始），结束事件为 -1
+ */
+public record VoiceEvent(Type type, int sentence, String text, DataBuffer audio) {
+
+    public enum Type {
+        TEXT, AUDIO, ERROR, END
+    }
+
+    public static VoiceEvent text(int sentence, String text) {
+        return new VoiceEvent(Type.TEXT, sentence, text, null);
+    }
+
+    public static VoiceEvent audio(int sentence, DataBuffer audio) {
+        return new VoiceEvent(Type.AUDIO, sentence, null, audio);
+    }
+
+    public static VoiceEvent error(int sentence, String message) {
+        return new VoiceEvent(Type.ERROR, sentence, message, null);
+    }
+
+    public static VoiceEvent end() {
+        return new VoiceEvent(Type.END, -1, null, null);
+    }
+
+    /**
+     * 释放持有的音频缓冲（没有音频时什么也不做）
+     */
+    public void release() {
+        if (audio != null) {
+            DataBufferUtils.release(audio);
+        }
+    }
+
+    /**
+     * 兼容的 SSE 文本格式：TEXT_SEGMENT:句子、AUDIO_CHUNK:Base64 音频、ERROR:原因、AUDIO_END；音频编码后即释放
+     */
+    public String toSseData() {
+        return switch (type) {
+            case TEXT -> "TEXT_SEGMENT:" + text;
+            case AUDIO -> {
+                try {
+                    byte[] bytes = new byte[audio.readableByteCount()];
+                    audio.read(bytes);
+                    yield "AUDIO_CHUNK:" + Base64.getEncoder().encodeToString(bytes);
+                } finally {
+                    release();
+                }
+            }
+            case ERROR -> "ERROR:" + text;
+            case END -> "AUDIO_END";
+        };
+    }
+}
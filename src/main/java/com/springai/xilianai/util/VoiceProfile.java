@@ -0,0 +1,97 @@
+package com.springai.xilianai.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 编译好的音色：启动时把音色的全部合成参数序列化一次，得到不可变的 JSON 片段，
+ * 每次合成只需把文本和少数按请求变化的参数拼在前面（见 {@link TtsSynthesisRequest#toJson()}）
+ */
+public final class VoiceProfile {
+
+    private final String name;
+    private final String textLang;
+    private final double speedFactor;
+    /**
+     * 以 {@code ,} 开头、{@code }} 结尾的参数片段，如 {@code ,"ref_audio_path":"...","top_k":5}}
+     */
+    private final byte[] paramsJson;
+    /**
+     * 参数片段的 SHA-256，参与缓存 key：任何参数变化都会换 key
+     */
+    private final String fingerprint;
+
+    private VoiceProfile(String name, String textLang, double speedFactor, byte[] paramsJson) {
+        this.name = name;
+        this.textLang = textLang;
+        this.speedFactor = speedFactor;
+        this.paramsJson = paramsJson;
+        try {
+            this.fingerprint = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(paramsJson));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 序列化音色参数；text、text_lang、batch_size、speed_factor、streaming_mode 不在片段里，由请求拼接
+     */
+    public static VoiceProfile compile(String name, TtsProperties.Voice voice, ObjectMapper objectMapper) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        if (voice.getRefAudioPath() != null) {
+            params.put("ref_audio_path", voice.getRefAudioPath());
+        }
+        params.put("aux_ref_audio_paths", voice.getAuxRefAudioPaths());
+        params.put("prompt_text", voice.getPromptText());
+        params.put("prompt_lang", voice.getPromptLang());
+        params.put("top_k", voice.getTopK());
+        params.put("top_p", voice.getTopP());
+        params.put("temperature", voice.getTemperature());
+        params.put("text_split_method", voice.getTextSplitMethod());
+        params.put("batch_threshold", voice.getBatchThreshold());
+        params.put("split_bucket", voice.isSplitBucket());
+        params.put("fragment_interval", voice.getFragmentInterval());
+        params.put("seed", voice.getSeed());
+        params.put("media_type", voice.getMediaType());
+        params.put("parallel_infer", voice.isParallelInfer());
+        params.put("repetition_penalty", voice.getRepetitionPenalty());
+        params.put("sample_steps", voice.getSampleSteps());
+        params.put("super_sampling", voice.isSuperSampling());
+        params.put("overlap_length", voice.getOverlapLength());
+        params.put("min_chunk_length", voice.getMinChunkLength());
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(params);
+            // {"a":1} -> ,"a":1}
+            json[0] = ',';
+            return new VoiceProfile(name, voice.getTextLang(), voice.getSpeedFactor(), json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("音色参数序列化失败: " + name, e);
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String textLang() {
+        return textLang;
+    }
+
+    public double speedFactor() {
+        return speedFactor;
+    }
+
+    byte[] paramsJson() {
+        return paramsJson;
+    }
+
+    String fingerprint() {
+        return fingerprint;
+    }
+}
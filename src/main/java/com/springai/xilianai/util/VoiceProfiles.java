@@ -0,0 +1,58 @@
+package com.springai.xilianai.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按名称查找音色（xilian.tts.voices），启动时把每个音色编译成 {@link VoiceProfile}
+ */
+@Slf4j
+@Component
+public class VoiceProfiles {
+
+    private final Map<String, VoiceProfile> profiles;
+    private final VoiceProfile defaultProfile;
+
+    public VoiceProfiles(TtsProperties properties, ObjectMapper objectMapper) {
+        Map<String, VoiceProfile> compiled = new LinkedHashMap<>();
+        properties.getVoices().forEach((name, voice) ->
+                compiled.put(name, VoiceProfile.compile(name, voice, objectMapper)));
+        String defaultName = properties.getDefaultVoice();
+        if (!compiled.containsKey(defaultName)) {
+            log.warn("没有配置默认音色 {}，使用内置参数（未设置参考音频）", defaultName);
+            compiled.put(defaultName, VoiceProfile.compile(defaultName, new TtsProperties.Voice(), objectMapper));
+        }
+        this.profiles = Map.copyOf(compiled);
+        this.defaultProfile = compiled.get(defaultName);
+        log.info("已加载音色: {}，默认: {}", compiled.keySet(), defaultName);
+    }
+
+    /**
+     * 按名称取音色，名称为空时返回默认音色
+     *
+     * @throws IllegalArgumentException 没有该音色
+     */
+    public VoiceProfile get(String name) {
+        if (name == null || name.isBlank()) {
+            return defaultProfile;
+        }
+        VoiceProfile profile = profiles.get(name);
+        if (profile == null) {
+            throw new IllegalArgumentException("未知的音色: " + name + "，可用: " + profiles.keySet());
+        }
+        return profile;
+    }
+
+    public VoiceProfile defaultProfile() {
+        return defaultProfile;
+    }
+
+    public Set<String> names() {
+        return profiles.keySet();
+    }
+}
@@ -0,0 +1,125 @@
+package com.springai.xilianai.advisor;
+
+import com.springai.xilianai.rag.QueryEmbeddingCache;
+import com.springai.xilianai.rag.RagProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 语义缓存测试：缓存按人设隔离、跨会话命中，只有不带历史的回答写入缓存
+ */
+class SemanticCacheAdvisorTest {
+
+	private static final String PERSONA = "你是昔涟";
+	private static final String QUESTION = "翁法罗斯是什么地方？";
+
+	private SemanticCacheAdvisor advisor;
+	private CallAdvisorChain chain;
+
+	@BeforeEach
+	void setUp() {
+		EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+		when(embeddingModel.embed(anyString())).thenReturn(new float[]{1f, 0f});
+		QueryEmbeddingCache queryEmbeddingCache = new QueryEmbeddingCache(embeddingModel, new RagProperties(),
+				new SimpleMeterRegistry());
+		advisor = new SemanticCacheAdvisor(queryEmbeddingCache, new SemanticCacheProperties(),
+				new SimpleMeterRegistry());
+		chain = mock(CallAdvisorChain.class);
+		when(chain.nextCall(any())).thenReturn(response("生成的回答"));
+	}
+
+	@Test
+	void repeatedQuestionInAnotherConversationHits() {
+		advisor.adviseCall(request("a", PERSONA, List.of()), chain);
+
+		ChatClientResponse second = advisor.adviseCall(request("b", PERSONA, List.of()), chain);
+
+		assertEquals("生成的回答", second.chatResponse().getResult().getOutput().getText());
+		verify(chain, times(1)).nextCall(any());
+	}
+
+	@Test
+	void laterTurnReusesFirstTurnAnswer() {
+		advisor.adviseCall(request("a", PERSONA, List.of()), chain);
+
+		advisor.adviseCall(request("b", PERSONA,
+				List.of(new UserMessage("你好"), new AssistantMessage("你好呀"))), chain);
+
+		verify(chain, times(1)).nextCall(any());
+	}
+
+	@Test
+	void answersWithHistoryAreNotStored() {
+		List<Message> history = List.of(new UserMessage("她的妹妹呢"), new AssistantMessage("……"));
+		advisor.adviseCall(request("a", PERSONA, history), chain);
+
+		advisor.adviseCall(request("b", PERSONA, List.of()), chain);
+
+		verify(chain, times(2)).nextCall(any());
+		assertEquals(1, advisor.size());
+	}
+
+	@Test
+	void differentPersonaMisses() {
+		advisor.adviseCall(request("a", PERSONA, List.of()), chain);
+
+		advisor.adviseCall(request("b", "你是另一个角色", List.of()), chain);
+
+		verify(chain, times(2)).nextCall(any());
+	}
+
+	@Test
+	void bypassedRequestSkipsCache() {
+		ChatClientRequest request = ChatClientRequest.builder()
+				.prompt(new Prompt(List.of(new SystemMessage(PERSONA), new UserMessage(QUESTION))))
+				.context(Map.of(ChatMemory.CONVERSATION_ID, "a", SemanticCacheAdvisor.BYPASS, true))
+				.build();
+		advisor.adviseCall(request, chain);
+		advisor.adviseCall(request, chain);
+
+		assertEquals(0, advisor.size());
+		verify(chain, times(2)).nextCall(any());
+	}
+
+	private static ChatClientRequest request(String conversationId, String persona, List<Message> history) {
+		List<Message> messages = new ArrayList<>();
+		messages.add(new SystemMessage(persona));
+		messages.addAll(history);
+		messages.add(new UserMessage(QUESTION));
+		return ChatClientRequest.builder()
+				.prompt(new Prompt(messages))
+				.context(Map.of(ChatMemory.CONVERSATION_ID, conversationId))
+				.build();
+	}
+
+	private static ChatClientResponse response(String text) {
+		return ChatClientResponse.builder()
+				.chatResponse(new ChatResponse(List.of(new Generation(new AssistantMessage(text)))))
+				.build();
+	}
+}
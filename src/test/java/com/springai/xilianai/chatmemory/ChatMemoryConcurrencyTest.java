@@ -0,0 +1,105 @@
+package com.springai.xilianai.chatmemory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 对话记忆并发压力测试：多线程同时读写多个会话，验证没有丢失或损坏的消息
+ */
+class ChatMemoryConcurrencyTest {
+
+    private static final int CONVERSATIONS = 16;
+    private static final int WRITERS_PER_CONVERSATION = 4;
+    private static final int TURNS_PER_WRITER = 50;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void fileBasedChatMemoryKeepsEveryMessage() throws Exception {
+        FileBasedChatMemory memory = new FileBasedChatMemory(tempDir.toString());
+        hammer(memory);
+        verify(memory);
+        // 新实例从磁盘重新读取，验证日志和索引一致
+        verify(new FileBasedChatMemory(tempDir.toString()));
+    }
+
+    @Test
+    void cachedChatMemoryKeepsEveryMessageAfterFlush() throws Exception {
+        FileBasedChatMemory fileMemory = new FileBasedChatMemory(tempDir.toString());
+        // 容量很小，迫使压测过程中不断淘汰和写盘
+        CachedChatMemory memory = new CachedChatMemory(fileMemory, 20_000, Duration.ofMillis(5),
+                new SimpleMeterRegistry());
+        hammer(memory);
+        verify(memory);
+        memory.shutdown();
+        verify(new FileBasedChatMemory(tempDir.toString()));
+    }
+
+    private void hammer(ChatMemory memory) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < CONVERSATIONS; c++) {
+            for (int w = 0; w < WRITERS_PER_CONVERSATION; w++) {
+                String conversationId = "chat-" + c;
+                String writer = "w" + w;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int turn = 0; turn < TURNS_PER_WRITER; turn++) {
+                        memory.get(conversationId);
+                        memory.add(conversationId, List.of(
+                                new UserMessage(writer + ":" + turn + ":q"),
+                                new UserMessage(writer + ":" + turn + ":a")));
+                    }
+                    return null;
+                }));
+            }
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+    }
+
+    private void verify(ChatMemory memory) {
+        for (int c = 0; c < CONVERSATIONS; c++) {
+            List<Message> messages = memory.get("chat-" + c);
+            assertEquals(WRITERS_PER_CONVERSATION * TURNS_PER_WRITER * 2, messages.size());
+
+            // 每个写入者的消息必须成对、按顺序出现
+            Map<String, Integer> nextTurn = new HashMap<>();
+            for (int i = 0; i < messages.size(); i += 2) {
+                String[] question = messages.get(i).getText().split(":");
+                String[] answer = messages.get(i + 1).getText().split(":");
+                assertEquals(question[0], answer[0]);
+                assertEquals(question[1], answer[1]);
+                assertEquals("q", question[2]);
+                assertEquals("a", answer[2]);
+                int expected = nextTurn.getOrDefault(question[0], 0);
+                assertEquals(expected, Integer.parseInt(question[1]));
+                nextTurn.put(question[0], expected + 1);
+            }
+            assertTrue(nextTurn.values().stream().allMatch(turns -> turns == TURNS_PER_WRITER));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.springai.xilianai.chatmemory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 对话日志测试：区间读取，以及损坏的记录头不会按读出的长度分配内存
+ */
+class FileBasedChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void rangeReadDecodesOnlyTheSlice() {
+        FileBasedChatMemory memory = new FileBasedChatMemory(tempDir.toString());
+        memory.add("c", List.of(new UserMessage("0"), new AssistantMessage("1"), new UserMessage("2"),
+                new AssistantMessage("3")));
+
+        assertEquals(List.of("1", "2"), texts(memory.get("c", 1, 3)));
+        assertEquals(List.of("3"), texts(memory.get("c", 3, 10)));
+        assertEquals(List.of(), texts(memory.get("c", 4, 6)));
+    }
+
+    @Test
+    void corruptHeaderIsTreatedAsTornTail() throws Exception {
+        FileBasedChatMemory memory = new FileBasedChatMemory(tempDir.toString());
+        memory.add("c", List.of(new UserMessage("你好"), new AssistantMessage("你好呀")));
+
+        // 尾部追加一个声称约 2GB 长度的记录头
+        Path log = tempDir.resolve("c" + FileBasedChatMemory.LOG_SUFFIX);
+        try (OutputStream out = Files.newOutputStream(log, StandardOpenOption.APPEND)) {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(Integer.MAX_VALUE - 1);
+            data.writeInt(0);
+            data.write(new byte[16]);
+        }
+
+        FileBasedChatMemory reopened = new FileBasedChatMemory(tempDir.toString());
+        assertEquals(List.of("你好", "你好呀"), texts(reopened.get("c")));
+        reopened.add("c", List.of(new UserMessage("再见")));
+        assertEquals(List.of("你好", "你好呀", "再见"), texts(new FileBasedChatMemory(tempDir.toString()).get("c")));
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}
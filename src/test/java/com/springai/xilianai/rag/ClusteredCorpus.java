@@ -0,0 +1,138 @@
+package com.springai.xilianai.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * 向量库测试和基准共用的语料：围绕若干中心生成的带噪声向量（模拟同一主题的相近切片）
+ * <p>
+ * 文档 i 的文本为 {@code doc-i}，查询 q 的文本为 {@code query-q}，{@link #embeddingModel()} 按文本直接查表返回向量。
+ */
+class ClusteredCorpus {
+
+    private final int dimensions;
+    private final float[][] vectors;
+    private final float[][] queries;
+    private final Map<String, float[]> byText = new HashMap<>();
+
+    ClusteredCorpus(int dimensions, int size, int clusters, int queryCount, long seed) {
+        this.dimensions = dimensions;
+        SplittableRandom random = new SplittableRandom(seed);
+        float[][] centers = new float[clusters][];
+        for (int c = 0; c < clusters; c++) {
+            centers[c] = gaussian(random, 1f);
+        }
+        vectors = new float[size][];
+        for (int i = 0; i < size; i++) {
+            vectors[i] = noisy(centers[random.nextInt(clusters)], random);
+            byText.put(documentText(i), vectors[i]);
+        }
+        queries = new float[queryCount][];
+        for (int q = 0; q < queryCount; q++) {
+            queries[q] = noisy(centers[random.nextInt(clusters)], random);
+            byText.put(queryText(q), queries[q]);
+        }
+    }
+
+    int size() {
+        return vectors.length;
+    }
+
+    int queryCount() {
+        return queries.length;
+    }
+
+    static String documentText(int i) {
+        return "doc-" + i;
+    }
+
+    static String queryText(int q) {
+        return "query-" + q;
+    }
+
+    List<Document> documents() {
+        List<Document> documents = new ArrayList<>(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            documents.add(Document.builder().id(documentText(i)).text(documentText(i)).build());
+        }
+        return documents;
+    }
+
+    /**
+     * 暴力计算查询 q 的前 topK 个文档 id
+     */
+    List<String> exactTopK(int q, int topK) {
+        HnswIndex.NodeHeap heap = new HnswIndex.NodeHeap(topK + 1, true);
+        for (int i = 0; i < vectors.length; i++) {
+            float sum = 0f;
+            for (int d = 0; d < dimensions; d++) {
+                sum += queries[q][d] * vectors[i][d];
+            }
+            heap.push(i, sum);
+            if (heap.size() > topK) {
+                heap.pop();
+            }
+        }
+        List<String> ids = new ArrayList<>(topK);
+        for (int node : heap.drainDescending()) {
+            ids.add(documentText(node));
+        }
+        return ids;
+    }
+
+    EmbeddingModel embeddingModel() {
+        return new EmbeddingModel() {
+            @Override
+            public EmbeddingResponse call(EmbeddingRequest request) {
+                List<Embedding> embeddings = new ArrayList<>();
+                for (String text : request.getInstructions()) {
+                    float[] vector = byText.get(text);
+                    if (vector == null) {
+                        throw new IllegalArgumentException("语料中没有该文本: " + text);
+                    }
+                    embeddings.add(new Embedding(vector.clone(), embeddings.size()));
+                }
+                return new EmbeddingResponse(embeddings);
+            }
+
+            @Override
+            public float[] embed(Document document) {
+                return embed(document.getText());
+            }
+
+            @Override
+            public int dimensions() {
+                return dimensions;
+            }
+        };
+    }
+
+    private float[] noisy(float[] center, SplittableRandom random) {
+        float[] noise = gaussian(random, 1.5f);
+        float[] vector = new float[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            vector[d] = center[d] + noise[d];
+        }
+        return Vectors.normalize(vector);
+    }
+
+    private float[] gaussian(SplittableRandom random, float sigma) {
+        float[] vector = new float[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            // Box-Muller
+            double u = 1 - random.nextDouble();
+            double v = random.nextDouble();
+            vector[d] = (float) (Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v) * sigma);
+        }
+        return vector;
+    }
+}
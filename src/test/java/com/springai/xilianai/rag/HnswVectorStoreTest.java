@@ -0,0 +1,189 @@
+package com.springai.xilianai.rag;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HNSW 向量库测试：堆内、堆外和量化存储经 {@link HnswVectorStore} 重新打分后的召回率，元数据过滤，以及快照保存加载的往返
+ * <p>
+ * 耗时和内存占用的对比见 {@link VectorStorageBenchmark}。
+ */
+class HnswVectorStoreTest {
+
+    private static final int DIMENSIONS = 256;
+    private static final int TOP_K = 10;
+    private static final int RESCORE_FACTOR = 4;
+
+    private static final ClusteredCorpus CORPUS = new ClusteredCorpus(DIMENSIONS, 1000, 30, 30, 7);
+
+    @TempDir
+    Path tempDir;
+
+    private final List<VectorStorage> storages = new ArrayList<>();
+
+    @AfterEach
+    void closeStorages() {
+        storages.forEach(VectorStorage::close);
+    }
+
+    @Test
+    void quantizedSearchKeepsRecallAfterRescoring() {
+        assertTrue(recall(heapStore()) >= 0.98);
+        assertTrue(recall(store(RagProperties.Quantization.NONE)) >= 0.98);
+        assertTrue(recall(store(RagProperties.Quantization.INT8)) >= 0.95);
+        assertTrue(recall(store(RagProperties.Quantization.BINARY)) >= 0.8);
+    }
+
+    @Test
+    void metadataFilterReturnsOnlyMatchingDocuments() {
+        HnswVectorStore store = store(RagProperties.Quantization.INT8);
+        store.add(withMetadata(CORPUS.documents()));
+
+        int hits = 0;
+        for (int q = 0; q < CORPUS.queryCount(); q++) {
+            SearchRequest request = SearchRequest.builder()
+                    .query(ClusteredCorpus.queryText(q))
+                    .topK(TOP_K)
+                    .similarityThresholdAll()
+                    .filterExpression("status == 'published' && filename == 'f0.md'")
+                    .build();
+            Set<String> expected = CORPUS.exactTopK(q, CORPUS.size()).stream()
+                    .filter(id -> number(id) % 10 == 0)
+                    .limit(TOP_K)
+                    .collect(Collectors.toSet());
+            List<Document> results = store.similaritySearch(request);
+            assertEquals(TOP_K, results.size());
+            for (Document document : results) {
+                assertEquals("published", document.getMetadata().get("status"));
+                assertEquals("f0.md", document.getMetadata().get("filename"));
+                if (expected.contains(document.getId())) {
+                    hits++;
+                }
+            }
+        }
+        assertTrue((double) hits / (CORPUS.queryCount() * TOP_K) >= 0.9);
+    }
+
+    @Test
+    void deleteByFilterRemovesMatchingDocuments() {
+        HnswVectorStore store = heapStore();
+        store.add(withMetadata(CORPUS.documents()));
+
+        store.delete(new FilterExpressionBuilder().eq("status", "draft").build());
+
+        for (int q = 0; q < CORPUS.queryCount(); q++) {
+            for (Document document : store.similaritySearch(request(q))) {
+                assertEquals("published", document.getMetadata().get("status"));
+            }
+        }
+    }
+
+    @Test
+    void heapSnapshotRoundTrip() {
+        HnswVectorStore store = heapStore();
+        store.add(CORPUS.documents());
+        File file = tempDir.resolve("heap.bin").toFile();
+        store.save(file);
+
+        HnswVectorStore loaded = heapStore();
+        loaded.load(file);
+
+        for (int q = 0; q < CORPUS.queryCount(); q++) {
+            assertEquals(ids(store.similaritySearch(request(q))), ids(loaded.similaritySearch(request(q))));
+        }
+    }
+
+    @Test
+    void snapshotRoundTripPreservesResultsAndDeletions() {
+        HnswVectorStore store = store(RagProperties.Quantization.INT8);
+        store.add(CORPUS.documents());
+        store.delete(List.of(ClusteredCorpus.documentText(0)));
+        File file = tempDir.resolve("index.bin").toFile();
+        store.save(file);
+
+        HnswVectorStore loaded = store(RagProperties.Quantization.INT8);
+        loaded.load(file);
+
+        for (int q = 0; q < CORPUS.queryCount(); q++) {
+            List<String> expected = ids(store.similaritySearch(request(q)));
+            List<String> actual = ids(loaded.similaritySearch(request(q)));
+            assertEquals(expected, actual);
+            assertFalse(actual.contains(ClusteredCorpus.documentText(0)));
+        }
+    }
+
+    private double recall(HnswVectorStore store) {
+        store.add(CORPUS.documents());
+        int hits = 0;
+        for (int q = 0; q < CORPUS.queryCount(); q++) {
+            Set<String> expected = new HashSet<>(CORPUS.exactTopK(q, TOP_K));
+            for (String id : ids(store.similaritySearch(request(q)))) {
+                if (expected.contains(id)) {
+                    hits++;
+                }
+            }
+        }
+        return (double) hits / (CORPUS.queryCount() * TOP_K);
+    }
+
+    private HnswVectorStore store(RagProperties.Quantization quantization) {
+        return new HnswVectorStore(CORPUS.embeddingModel(), 16, 100, 64, dimensions -> {
+            VectorStorage storage = new OffHeapVectorStorage(dimensions, quantization, tempDir);
+            storages.add(storage);
+            return storage;
+        }, RESCORE_FACTOR);
+    }
+
+    private HnswVectorStore heapStore() {
+        return new HnswVectorStore(CORPUS.embeddingModel(), 16, 100, 64, HeapVectorStorage::new, RESCORE_FACTOR);
+    }
+
+    /**
+     * 偶数号文档已发布、奇数号是草稿；文件名按编号除以 5 的余数分到 f0.md ~ f4.md
+     */
+    private static List<Document> withMetadata(List<Document> documents) {
+        List<Document> result = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            result.add(Document.builder()
+                    .id(document.getId())
+                    .text(document.getText())
+                    .metadata(Map.of("status", i % 2 == 0 ? "published" : "draft", "filename", "f" + (i % 5) + ".md"))
+                    .build());
+        }
+        return result;
+    }
+
+    private static int number(String id) {
+        return Integer.parseInt(id.substring("doc-".length()));
+    }
+
+    private static SearchRequest request(int q) {
+        return SearchRequest.builder()
+                .query(ClusteredCorpus.queryText(q))
+                .topK(TOP_K)
+                .similarityThresholdAll()
+                .build();
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+}
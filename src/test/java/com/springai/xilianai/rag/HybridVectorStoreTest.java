@@ -0,0 +1,84 @@
+package com.springai.xilianai.rag;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 混合检索测试：融合后保留向量分数，关键词命中受最低分数和请求的相似度阈值约束
+ */
+class HybridVectorStoreTest {
+
+    private static final Document KNIGHT = Document.builder().id("knight").text("她是一名骑士，守护着城邦").build();
+    private static final Document ARCHIVE = Document.builder().id("archive").text("编号093的档案").build();
+
+    private VectorStore delegate;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(VectorStore.class);
+        when(delegate.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(Document.builder()
+                .id(KNIGHT.getId())
+                .text(KNIGHT.getText())
+                .score(0.8)
+                .build()));
+    }
+
+    @Test
+    void fusedResultsKeepVectorAndLexicalScores() {
+        HybridVectorStore store = store(0.1);
+
+        List<Document> results = store.similaritySearch(request(SearchRequest.SIMILARITY_THRESHOLD_ACCEPT_ALL));
+
+        assertEquals(List.of("knight", "archive"), ids(results));
+        assertEquals(0.8, results.get(0).getMetadata().get(HybridVectorStore.VECTOR_SCORE));
+        assertFalse(results.get(0).getMetadata().containsKey(HybridVectorStore.LEXICAL_SCORE));
+        assertFalse(results.get(1).getMetadata().containsKey(HybridVectorStore.VECTOR_SCORE));
+        assertTrue(results.get(1).getMetadata().containsKey(HybridVectorStore.LEXICAL_SCORE));
+    }
+
+    @Test
+    void lexicalHitsBelowMinScoreAreDropped() {
+        HybridVectorStore store = store(100);
+
+        List<Document> results = store.similaritySearch(request(SearchRequest.SIMILARITY_THRESHOLD_ACCEPT_ALL));
+
+        assertEquals(List.of("knight"), ids(results));
+    }
+
+    @Test
+    void similarityThresholdExcludesLexicalOnlyHits() {
+        HybridVectorStore store = store(0.1);
+
+        assertEquals(List.of("knight"), ids(store.similaritySearch(request(0.5))));
+    }
+
+    private HybridVectorStore store(double lexicalMinScore) {
+        HybridVectorStore store = new HybridVectorStore(delegate, 60, 10, 0, lexicalMinScore);
+        store.add(List.of(KNIGHT, ARCHIVE));
+        return store;
+    }
+
+    private static SearchRequest request(double threshold) {
+        return SearchRequest.builder()
+                .query("093")
+                .topK(4)
+                .similarityThreshold(threshold)
+                .build();
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+}
@@ -0,0 +1,124 @@
+package com.springai.xilianai.rag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * 向量存储基准：堆内、堆外和量化存储上 {@link HnswVectorStore} 的建库和检索耗时，每轮结束时打印各存储的内存占用
+ * <p>
+ * 语料见 {@link ClusteredCorpus}，维度与 DashScope 向量一致；召回率由 {@link HnswVectorStoreTest} 检查。
+ * <p>
+ * 运行：{@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.springai.xilianai.rag.VectorStorageBenchmark}，或在 IDE 中直接运行 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorStorageBenchmark {
+
+    private static final int DIMENSIONS = 1536;
+    private static final int TOP_K = 10;
+    private static final int RESCORE_FACTOR = 4;
+
+    @Param({"heap", "off-heap", "int8", "binary"})
+    private String storage;
+
+    @Param({"2000"})
+    private int vectors;
+
+    private ClusteredCorpus corpus;
+    private List<Document> documents;
+    private Path tempDir;
+    private final List<VectorStorage> storages = new ArrayList<>();
+    private HnswVectorStore store;
+    private int nextQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = new ClusteredCorpus(DIMENSIONS, vectors, 60, 50, 7);
+        documents = corpus.documents();
+        tempDir = Files.createTempDirectory("vector-storage-benchmark");
+        store = newStore();
+        store.add(documents);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        VectorStorage searched = storages.get(0);
+        long codeBytes = searched instanceof OffHeapVectorStorage offHeap ? offHeap.codeBytes() : 0;
+        System.out.printf("%n%-8s heap=%,d B off-heap=%,d B codes=%,d B%n",
+                storage, searched.heapBytes(), searched.offHeapBytes(), codeBytes);
+        storages.forEach(VectorStorage::close);
+        storages.clear();
+    }
+
+    @Benchmark
+    public List<Document> search() {
+        int q = nextQuery;
+        nextQuery = (q + 1) % corpus.queryCount();
+        return store.similaritySearch(SearchRequest.builder()
+                .query(ClusteredCorpus.queryText(q))
+                .topK(TOP_K)
+                .similarityThresholdAll()
+                .build());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public HnswVectorStore build() {
+        HnswVectorStore built = newStore();
+        built.add(documents);
+        return built;
+    }
+
+    private HnswVectorStore newStore() {
+        IntFunction<VectorStorage> factory = switch (storage) {
+            case "heap" -> HeapVectorStorage::new;
+            case "off-heap" -> dims -> new OffHeapVectorStorage(dims, RagProperties.Quantization.NONE, tempDir);
+            case "int8" -> dims -> new OffHeapVectorStorage(dims, RagProperties.Quantization.INT8, tempDir);
+            case "binary" -> dims -> new OffHeapVectorStorage(dims, RagProperties.Quantization.BINARY, null);
+            default -> throw new IllegalArgumentException("未知的存储: " + storage);
+        };
+        return new HnswVectorStore(corpus.embeddingModel(), 16, 100, 64, dims -> {
+            VectorStorage created = factory.apply(dims);
+            storages.add(created);
+            return created;
+        }, RESCORE_FACTOR);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(VectorStorageBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,155 @@
+package com.springai.xilianai.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 分句基准：原来的正则分句与手写扫描的流式分句器对比
+ * <p>
+ * 两种场景：一次拿到整段回答；按大模型的输出节奏每次收到几个字。
+ * 原来的实现只能对整段文本分句，流式场景下只能每收到一块就把累积的全部文本重新分一遍。
+ * <p>
+ * 运行：{@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.springai.xilianai.util.SentenceSegmenterBenchmark}，或在 IDE 中直接运行 main 方法。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SentenceSegmenterBenchmark {
+
+    private static final String PARAGRAPH = "开拓者，你来啦！今天的列车上（据说帕姆又在打扫车厢。）格外热闹呢♪ " +
+            "我在翁法罗斯的时候，常常想起那片麦田。你还记得吗？那时候我们约好了，要一起去看最远的星星。" +
+            "The train departs at 3.14 p.m. sharp. 《往昔的涟漪》里写着：“记忆是不会消失的。”所以，别担心啦！";
+
+    /**
+     * 原来 SentenceSegmenter 使用的正则
+     */
+    private static final Pattern LEGACY_SENTENCE_END_PATTERN =
+            Pattern.compile("([。！？.!?])(?![^\\{<\\[（(]*[\\}>\\])）)])");
+
+    /**
+     * 一段回答包含的段落数
+     */
+    @Param({"1", "8"})
+    private int paragraphs;
+
+    /**
+     * 流式场景下每个文本块的字数
+     */
+    @Param({"4"})
+    private int chunkSize;
+
+    private String text;
+    private String[] chunks;
+
+    @Setup
+    public void setUp() {
+        text = PARAGRAPH.repeat(paragraphs);
+        int count = (text.length() + chunkSize - 1) / chunkSize;
+        chunks = new String[count];
+        for (int i = 0; i < count; i++) {
+            chunks[i] = text.substring(i * chunkSize, Math.min(text.length(), (i + 1) * chunkSize));
+        }
+    }
+
+    @Benchmark
+    public void regexWholeText(Blackhole blackhole) {
+        blackhole.consume(legacySegment(text));
+    }
+
+    @Benchmark
+    public void scannerWholeText(Blackhole blackhole) {
+        StreamingSentenceSplitter splitter = new StreamingSentenceSplitter(4, 100, 0);
+        splitter.accept(text, blackhole::consume);
+        splitter.flush(blackhole::consume);
+    }
+
+    /**
+     * 每收到一块就对累积的文本重新分句，取出已经完整的句子（最后一段没有句末标点时留到下一次）
+     */
+    @Benchmark
+    public void regexStreaming(Blackhole blackhole) {
+        StringBuilder pending = new StringBuilder();
+        for (String chunk : chunks) {
+            pending.append(chunk);
+            List<String> sentences = legacySegment(pending.toString());
+            pending.setLength(0);
+            if (!sentences.isEmpty()) {
+                String last = sentences.remove(sentences.size() - 1);
+                char lastChar = last.charAt(last.length() - 1);
+                if ("。！？.!?".indexOf(lastChar) < 0) {
+                    pending.append(last);
+                } else {
+                    sentences.add(last);
+                }
+            }
+            blackhole.consume(sentences);
+        }
+        blackhole.consume(legacySegment(pending.toString()));
+    }
+
+    @Benchmark
+    public void scannerStreaming(Blackhole blackhole) {
+        StreamingSentenceSplitter splitter = new StreamingSentenceSplitter(4, 100, 0);
+        for (String chunk : chunks) {
+            splitter.accept(chunk, blackhole::consume);
+        }
+        splitter.flush(blackhole::consume);
+    }
+
+    /**
+     * 原来的 SentenceSegmenter.segmentIntoSentences（包括多余的 split 调用）
+     */
+    private static List<String> legacySegment(String text) {
+        List<String> sentences = new ArrayList<>();
+        if (text == null || text.trim().isEmpty()) {
+            return sentences;
+        }
+        String[] parts = LEGACY_SENTENCE_END_PATTERN.split(text);
+        int startIndex = 0;
+        Matcher matcher = LEGACY_SENTENCE_END_PATTERN.matcher(text);
+        while (matcher.find()) {
+            int endIndex = matcher.end();
+            String sentence = text.substring(startIndex, endIndex).trim();
+            if (!sentence.isEmpty()) {
+                sentences.add(sentence);
+            }
+            startIndex = endIndex;
+        }
+        if (startIndex < text.length()) {
+            String lastPart = text.substring(startIndex).trim();
+            if (!lastPart.isEmpty()) {
+                sentences.add(lastPart);
+            }
+        }
+        return sentences;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SentenceSegmenterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,80 @@
+package com.springai.xilianai.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 流式分句器测试：各条断句规则，以及文本块在边界中间被切开时结果不变
+ */
+class StreamingSentenceSplitterTest {
+
+    @Test
+    void dotFollowedByLetterOrDigitIsNotABoundary() {
+        assertEquals(List.of("圆周率是3.14左右。", "下一句话。"), split(4, 100, "圆周率是3.14左右。下一句话。"));
+        assertEquals(List.of("Values like e.g.one are fine.", "Done now."),
+                split(4, 100, "Values like e.g.one are fine. Done now."));
+    }
+
+    @Test
+    void sentenceEndsInsideNestedBracketsAreIgnored() {
+        assertEquals(List.of("他说（这是（嵌套的。）括号。）真的。", "后面。"),
+                split(4, 100, "他说（这是（嵌套的。）括号。）真的。后面。"));
+    }
+
+    @Test
+    void angleBracketsAreNotBrackets() {
+        assertEquals(List.of("a<b。", "后面的句子。"), split(4, 100, "a<b。后面的句子。"));
+    }
+
+    @Test
+    void closingQuoteAfterPunctuationStaysWithSentence() {
+        assertEquals(List.of("她说：“你好！”", "然后走了。"), split(4, 100, "她说：“你好！”然后走了。"));
+    }
+
+    @Test
+    void shortSentenceMergesWithNext() {
+        assertEquals(List.of("好。今天天气不错。"), split(4, 100, "好。今天天气不错。"));
+    }
+
+    @Test
+    void longSentenceIsCutAtLastPause() {
+        assertEquals(List.of("一二三四五，", "六七八九十一二三。"), split(4, 10, "一二三四五，六七八九十一二三。"));
+    }
+
+    @Test
+    void chunkSplitInsideBoundaryGivesSameResult() {
+        assertEquals(List.of("第一句话。", "第二句话。"), split(4, 100, "第一句话", "。", "第二", "句话。"));
+        assertEquals(List.of("值是3.14。", "后面一句。"), split(4, 100, "值是3", ".", "14。后面一句。"));
+        assertEquals(List.of("她说：“你好！”", "然后走了。"), split(4, 100, "她说：“你好！", "”然后走了。"));
+    }
+
+    @Test
+    void flushIfIdleEmitsPendingTextAfterTimeout() {
+        StreamingSentenceSplitter splitter = new StreamingSentenceSplitter(4, 100, 1_000_000_000L);
+        List<String> sentences = new ArrayList<>();
+        splitter.accept("没有标点的文本", sentences::add);
+
+        assertFalse(splitter.flushIfIdle(System.nanoTime(), sentences::add));
+        assertTrue(splitter.hasPending());
+
+        assertTrue(splitter.flushIfIdle(System.nanoTime() + 2_000_000_000L, sentences::add));
+        assertEquals(List.of("没有标点的文本"), sentences);
+        assertFalse(splitter.hasPending());
+    }
+
+    private static List<String> split(int minLength, int maxLength, String... chunks) {
+        StreamingSentenceSplitter splitter = new StreamingSentenceSplitter(minLength, maxLength, 0);
+        List<String> sentences = new ArrayList<>();
+        for (String chunk : chunks) {
+            splitter.accept(chunk, sentences::add);
+        }
+        splitter.flush(sentences::add);
+        return sentences;
+    }
+}
@@ -0,0 +1,69 @@
+package com.springai.xilianai.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 合成缓存测试：发出的音频地址在音频不在缓存中时按记住的请求重新合成
+ */
+class TtsAudioCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void issuedLinkResynthesizesWhenAudioIsNotCached() {
+        // 内存层放不下任何音频，磁盘写入在后台进行，合成刚完成时缓存中没有这条音频
+        TtsProperties properties = new TtsProperties();
+        properties.getCache().setDir(tempDir.toString());
+        properties.getCache().setMaxMemorySize(DataSize.ofBytes(0));
+        TtsAudioCache cache = new TtsAudioCache(properties, new SimpleMeterRegistry());
+        TtsSynthesisRequest request = new TtsSynthesisRequest(
+                VoiceProfile.compile("test", new TtsProperties.Voice(), new ObjectMapper()), "你好", null, null, 1, false);
+        AtomicInteger calls = new AtomicInteger();
+
+        String key = cache.link(request);
+
+        assertEquals("audio:你好", read(cache.findOrSynthesize(key, r -> {
+            calls.incrementAndGet();
+            return audio(r.text());
+        })));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void unknownKeyIsNotFound() {
+        TtsProperties properties = new TtsProperties();
+        properties.getCache().setDir(tempDir.toString());
+        TtsAudioCache cache = new TtsAudioCache(properties, new SimpleMeterRegistry());
+
+        assertNull(cache.findOrSynthesize("abc", r -> audio(r.text())));
+    }
+
+    private static Flux<DataBuffer> audio(String text) {
+        return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(("audio:" + text).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String read(Flux<DataBuffer> audio) {
+        DataBuffer joined = DataBufferUtils.join(audio).block();
+        try {
+            return joined.toString(StandardCharsets.UTF_8);
+        } finally {
+            DataBufferUtils.release(joined);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.springai.xilianai.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * TTS 节点池测试：用本地 HTTP 桩模拟多个 GPT-SoVITS 进程，验证按未完成请求数分发、失败换节点重试和健康检查恢复
+ */
+class TtsBackendPoolTest {
+
+    private static final VoiceProfile VOICE = VoiceProfile.compile("default", new TtsProperties.Voice(),
+            new ObjectMapper());
+
+    private final List<StubBackend> stubs = new ArrayList<>();
+
+    @AfterEach
+    void stopStubs() {
+        stubs.forEach(stub -> stub.server.stop(0));
+    }
+
+    @Test
+    void concurrentRequestsSpreadAcrossBackends() throws Exception {
+        StubBackend first = stub("first", Duration.ofMillis(300));
+        StubBackend second = stub("second", Duration.ofMillis(300));
+        TtsBackendPool pool = pool(first, second);
+
+        List<String> bodies = Flux.range(0, 4)
+                .flatMap(i -> body(pool.post(request("句子" + i))), 4)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(4, bodies.size());
+        // 每个请求都还没完成时下一个请求就到了，未完成请求最少的节点轮流接收
+        assertEquals(2, first.synthesized.get());
+        assertEquals(2, second.synthesized.get());
+    }
+
+    @Test
+    void failedBackendIsRetriedElsewhereAndSkipped() throws Exception {
+        StubBackend broken = stub("broken", Duration.ZERO);
+        broken.status = 500;
+        StubBackend healthy = stub("healthy", Duration.ZERO);
+        TtsBackendPool pool = pool(broken, healthy);
+
+        assertEquals("healthy", body(pool.post(request("你好"))).block(Duration.ofSeconds(10)));
+        assertEquals(1, pool.healthyCount());
+
+        // 不健康的节点不再参与分发
+        for (int i = 0; i < 3; i++) {
+            assertEquals("healthy", body(pool.post(request("你好"))).block(Duration.ofSeconds(10)));
+        }
+        assertEquals(1, broken.synthesized.get());
+        assertEquals(4, healthy.synthesized.get());
+    }
+
+    @Test
+    void healthCheckRestoresRecoveredBackend() throws Exception {
+        StubBackend flaky = stub("flaky", Duration.ZERO);
+        StubBackend stable = stub("stable", Duration.ZERO);
+        TtsBackendPool pool = pool(flaky, stable);
+
+        flaky.status = 503;
+        pool.checkHealth().block(Duration.ofSeconds(10));
+        assertEquals(1, pool.healthyCount());
+
+        flaky.status = 200;
+        pool.checkHealth().block(Duration.ofSeconds(10));
+        assertEquals(2, pool.healthyCount());
+    }
+
+    private TtsBackendPool pool(StubBackend... backends) {
+        TtsProperties properties = new TtsProperties();
+        for (StubBackend backend : backends) {
+            properties.getBackends().add("http://127.0.0.1:" + backend.server.getAddress().getPort());
+        }
+        return new TtsBackendPool(WebClient.create(), properties);
+    }
+
+    private static TtsSynthesisRequest request(String text) {
+        return new TtsSynthesisRequest(VOICE, text, null, null, 1, false);
+    }
+
+    private static Mono<String> body(Flux<DataBuffer> audio) {
+        return DataBufferUtils.join(audio).map(buffer -> {
+            String text = buffer.toString(StandardCharsets.UTF_8);
+            DataBufferUtils.release(buffer);
+            return text;
+        });
+    }
+
+    private StubBackend stub(String name, Duration delay) throws IOException {
+        StubBackend stub = new StubBackend(name, delay);
+        stubs.add(stub);
+        return stub;
+    }
+
+    /**
+     * 模拟一个 GPT-SoVITS 进程：/tts 返回节点名，其他路径用于健康检查
+     */
+    private static final class StubBackend {
+        private final HttpServer server;
+        private final AtomicInteger synthesized = new AtomicInteger();
+        private volatile int status = 200;
+
+        StubBackend(String name, Duration delay) throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/tts", exchange -> {
+                exchange.getRequestBody().readAllBytes();
+                synthesized.incrementAndGet();
+                sleep(delay);
+                respond(exchange, status, name);
+            });
+            server.createContext("/", exchange -> respond(exchange, status, "ok"));
+            server.start();
+        }
+
+        private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        private static void sleep(Duration delay) {
+            try {
+                Thread.sleep(delay.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.springai.xilianai.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * TTS 网关测试：节点池换成可控的桩，验证并发名额、优先级排队、挤占、熔断与试探，以及节点恢复后放行排队请求
+ */
+class TtsGatewayTest {
+
+    private static final VoiceProfile VOICE = VoiceProfile.compile("default", new TtsProperties.Voice(),
+            new ObjectMapper());
+
+    private TtsBackendPool backendPool;
+    private TtsProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    /**
+     * 已发给节点池的合成，按发出顺序；测试决定每个合成何时成功或失败
+     */
+    private final List<Call> calls = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        backendPool = mock(TtsBackendPool.class);
+        when(backendPool.healthyCount()).thenReturn(1);
+        when(backendPool.post(any())).thenAnswer(invocation -> {
+            Call call = new Call(invocation.getArgument(0));
+            calls.add(call);
+            return call.audio.asFlux();
+        });
+        properties = new TtsProperties();
+        properties.getGateway().setMaxConcurrency(1);
+        properties.getGateway().setMaxQueueSize(1);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void queuedRequestsStartByPriorityWhenSlotFrees() {
+        properties.getGateway().setMaxQueueSize(2);
+        TtsGateway gateway = gateway();
+
+        submit(gateway, "running", TtsGateway.Priority.BATCH);
+        submit(gateway, "batch", TtsGateway.Priority.BATCH);
+        submit(gateway, "interactive", TtsGateway.Priority.INTERACTIVE);
+        assertEquals(List.of("running"), texts());
+
+        calls.get(0).succeed();
+        assertEquals(List.of("running", "interactive"), texts());
+        calls.get(1).succeed();
+        assertEquals(List.of("running", "interactive", "batch"), texts());
+    }
+
+    @Test
+    void interactiveRequestShedsQueuedBatchWhenQueueIsFull() {
+        TtsGateway gateway = gateway();
+        submit(gateway, "running", TtsGateway.Priority.BATCH);
+        AtomicReference<Throwable> batch = submit(gateway, "batch", TtsGateway.Priority.BATCH);
+        AtomicReference<Throwable> interactive = submit(gateway, "interactive", TtsGateway.Priority.INTERACTIVE);
+        AtomicReference<Throwable> rejected = submit(gateway, "another batch", TtsGateway.Priority.BATCH);
+
+        assertInstanceOf(TtsOverloadedException.class, batch.get());
+        assertNull(interactive.get());
+        assertInstanceOf(TtsOverloadedException.class, rejected.get());
+        assertEquals(1.0, rejected("shed"));
+        assertEquals(1.0, rejected("queue_full"));
+
+        calls.get(0).succeed();
+        assertEquals(List.of("running", "interactive"), texts());
+    }
+
+    @Test
+    void circuitOpensAfterFailuresAndClosesAfterSuccessfulProbe() throws InterruptedException {
+        properties.getGateway().setFailureThreshold(2);
+        properties.getGateway().setOpenDuration(Duration.ofMillis(100));
+        TtsGateway gateway = gateway();
+
+        submit(gateway, "first", TtsGateway.Priority.BATCH);
+        calls.get(0).fail();
+        submit(gateway, "second", TtsGateway.Priority.BATCH);
+        calls.get(1).fail();
+
+        assertInstanceOf(TtsOverloadedException.class, submit(gateway, "open", TtsGateway.Priority.BATCH).get());
+        assertEquals(2, calls.size());
+
+        Thread.sleep(150);
+        submit(gateway, "probe", TtsGateway.Priority.BATCH);
+        // 试探请求结束前，其余请求仍被拒绝
+        assertInstanceOf(TtsOverloadedException.class, submit(gateway, "waiting", TtsGateway.Priority.BATCH).get());
+        calls.get(2).succeed();
+
+        assertNull(submit(gateway, "closed", TtsGateway.Priority.BATCH).get());
+        assertEquals(List.of("first", "second", "probe", "closed"), texts());
+        assertEquals(2.0, rejected("circuit_open"));
+    }
+
+    @Test
+    void recoveredBackendReleasesQueuedRequests() {
+        ArgumentCaptor<Runnable> listener = ArgumentCaptor.forClass(Runnable.class);
+        TtsGateway gateway = gateway();
+        verify(backendPool).onHealthChange(listener.capture());
+
+        submit(gateway, "running", TtsGateway.Priority.BATCH);
+        submit(gateway, "queued", TtsGateway.Priority.BATCH);
+        assertEquals(List.of("running"), texts());
+
+        when(backendPool.healthyCount()).thenReturn(2);
+        listener.getValue().run();
+
+        assertEquals(List.of("running", "queued"), texts());
+    }
+
+    @Test
+    void rejectCountersAreRegisteredUpFront() {
+        gateway();
+
+        for (String reason : List.of("circuit_open", "deadline", "queue_full", "shed", "queue_timeout")) {
+            assertEquals(0.0, rejected(reason));
+        }
+    }
+
+    private TtsGateway gateway() {
+        return new TtsGateway(backendPool, properties, meterRegistry);
+    }
+
+    /**
+     * 提交一个合成请求，返回它收到的错误（没有错误时为 null）
+     */
+    private static AtomicReference<Throwable> submit(TtsGateway gateway, String text, TtsGateway.Priority priority) {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        gateway.synthesize(new TtsSynthesisRequest(VOICE, text, null, null, 1, false), priority)
+                .subscribe(DataBufferUtils::release, error::set);
+        return error;
+    }
+
+    private List<String> texts() {
+        return calls.stream().map(call -> call.request.text()).toList();
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get("xilian.tts.gateway.rejected").tag("reason", reason).counter().count();
+    }
+
+    private static final class Call {
+        private final TtsSynthesisRequest request;
+        private final Sinks.Many<DataBuffer> audio = Sinks.many().unicast().onBackpressureBuffer();
+
+        Call(TtsSynthesisRequest request) {
+            this.request = request;
+        }
+
+        void succeed() {
+            audio.tryEmitComplete();
+        }
+
+        void fail() {
+            audio.tryEmitError(new IllegalStateException("合成失败"));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.springai.xilianai.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 音色模板测试：拼接出的请求体是合法 JSON，文本正确转义，缓存 key 覆盖全部参数
+ */
+class TtsSynthesisRequestTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void splicedBodyIsValidJsonWithEscapedText() throws Exception {
+        TtsProperties.Voice voice = new TtsProperties.Voice();
+        voice.setRefAudioPath("F:/wav/\"希\"联.wav");
+        voice.setAuxRefAudioPaths(List.of("a.wav", "b.wav"));
+        voice.setSpeedFactor(1.2);
+        VoiceProfile profile = VoiceProfile.compile("test", voice, objectMapper);
+
+        String text = "第一行\n第二行 \"引号\" \\ 反斜杠\t😀";
+        JsonNode body = objectMapper.readTree(new TtsSynthesisRequest(profile, text, null, null, 3, true).toJson());
+
+        assertEquals(text, body.get("text").asText());
+        assertEquals("zh", body.get("text_lang").asText());
+        assertEquals(3, body.get("batch_size").asInt());
+        assertEquals(1.2, body.get("speed_factor").asDouble());
+        assertTrue(body.get("streaming_mode").asBoolean());
+        assertEquals("F:/wav/\"希\"联.wav", body.get("ref_audio_path").asText());
+        assertEquals(2, body.get("aux_ref_audio_paths").size());
+        assertEquals(5, body.get("top_k").asInt());
+        assertEquals("cut5", body.get("text_split_method").asText());
+    }
+
+    @Test
+    void requestOverridesVoiceDefaults() throws Exception {
+        VoiceProfile profile = VoiceProfile.compile("test", new TtsProperties.Voice(), objectMapper);
+
+        JsonNode body = objectMapper.readTree(new TtsSynthesisRequest(profile, "hello", "en", 0.8, 1, false).toJson());
+
+        assertEquals("en", body.get("text_lang").asText());
+        assertEquals(0.8, body.get("speed_factor").asDouble());
+        assertThrows(IllegalArgumentException.class,
+                () -> new TtsSynthesisRequest(profile, "hello", null, Double.NaN, 1, false));
+    }
+
+    @Test
+    void cacheKeyCoversVoiceAndRequestParameters() {
+        TtsProperties.Voice voice = new TtsProperties.Voice();
+        VoiceProfile profile = VoiceProfile.compile("a", voice, objectMapper);
+        voice.setTemperature(0.6);
+        VoiceProfile warmer = VoiceProfile.compile("b", voice, objectMapper);
+
+        String key = new TtsSynthesisRequest(profile, "你好", null, null, 1, false).cacheKey();
+        // 空白差异规范化后相同
+        assertEquals(key, new TtsSynthesisRequest(profile, " 你好 ", null, null, 1, false).cacheKey());
+        assertNotEquals(key, new TtsSynthesisRequest(warmer, "你好", null, null, 1, false).cacheKey());
+        assertNotEquals(key, new TtsSynthesisRequest(profile, "你好", null, 1.5, 1, false).cacheKey());
+        assertNotEquals(key, new TtsSynthesisRequest(profile, "你好", null, null, 1, true).cacheKey());
+    }
+}